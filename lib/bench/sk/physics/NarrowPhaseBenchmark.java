@@ -0,0 +1,97 @@
+package sk.physics;
+
+import sk.gfx.Transform;
+import sk.util.vector.Vector2f;
+
+/**
+ * Times SAT against GJK and EPA for pairs of regular polygons with
+ * more and more points, and prints where GJK starts to win. Use it to
+ * pick {@link World#gjkPoints} for the machine the game runs on.
+ * <p>
+ * It lives in <code>lib/bench</code>, so it isn't shipped with the game.
+ * Compile it together with <code>lib/src</code>, since it uses the
+ * package private parts of the physics, and run it with
+ * <code>java sk.physics.NarrowPhaseBenchmark [iterations]</code>.
+ * </p>
+ *
+ * @author Ed
+ *
+ */
+public class NarrowPhaseBenchmark {
+
+	// The number of points of the polygons that are tested
+	private static final int[] SIDES = { 4, 6, 8, 10, 12, 16, 20, 24, 32, 48, 64 };
+
+	// Keeps the results alive, so the tests aren't optimized away
+	private static float sink = 0.0f;
+
+	// The memory GJK works in
+	private static final GJK.Scratch scratch = new GJK.Scratch();
+
+	public static void main(String[] args) {
+		int iterations = args.length < 1 ? 200000 : Integer.parseInt(args[0]);
+
+		System.out.println("points\toverlap SAT\toverlap GJK\tapart SAT\tapart GJK\t(ns per test)");
+		int crossover = -1;
+		for (int sides : SIDES) {
+			Body a = polygon(sides, 0.0f, 0.0f, 0.1f);
+			Body apart = polygon(sides, 2.3f, 0.4f, 0.7f);
+			Body overlapping = polygon(sides, 1.6f, 0.4f, 0.7f);
+
+			// Run both a while first, so they are compiled before they are timed
+			time(a, overlapping, false, iterations);
+			time(a, overlapping, true, iterations);
+
+			double overlapSAT = time(a, overlapping, false, iterations);
+			double overlapGJK = time(a, overlapping, true, iterations);
+			double apartSAT = time(a, apart, false, iterations);
+			double apartGJK = time(a, apart, true, iterations);
+			System.out.printf("%d\t%.1f\t\t%.1f\t\t%.1f\t\t%.1f%n",
+					sides * 2, overlapSAT, overlapGJK, apartSAT, apartGJK);
+
+			if (crossover == -1 && overlapGJK < overlapSAT) {
+				crossover = sides * 2;
+			}
+		}
+
+		if (crossover == -1) {
+			System.out.println("SAT was faster for every pair.");
+		} else {
+			System.out.println("GJK was faster from " + crossover + " points together, "
+					+ "World.gjkPoints is " + new World().gjkPoints + ".");
+		}
+		if (sink == 0.0f) System.out.println();
+	}
+
+	/**
+	 * Returns the average time of one test in nanoseconds.
+	 */
+	private static double time(Body a, Body b, boolean gjk, int iterations) {
+		long start = System.nanoTime();
+		for (int i = 0; i < iterations; i++) {
+			Collision c = gjk ? GJK.test(a, 0, b, 0, scratch) : Collision.SATtest(a, 0, b, 0);
+			if (c != null) sink += c.collisionDepth;
+		}
+		return (System.nanoTime() - start) / (double) iterations;
+	}
+
+	/**
+	 * Creates a body with a single regular polygon with a radius of 1.
+	 */
+	private static Body polygon(int sides, float x, float y, float rotation) {
+		Vector2f[] points = new Vector2f[sides];
+		for (int i = 0; i < sides; i++) {
+			double angle = Math.PI * 2.0 * i / sides;
+			points[i] = new Vector2f((float) Math.cos(angle), (float) Math.sin(angle));
+		}
+
+		Transform t = new Transform();
+		t.position.set(x, y);
+		t.rotation = rotation;
+
+		Body body = new Body(new Shape(points));
+		body.decouple(t);
+		body.updateGeometry();
+		return body;
+	}
+}
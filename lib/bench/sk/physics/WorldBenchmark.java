@@ -0,0 +1,182 @@
+package sk.physics;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Random;
+
+import sk.gfx.Transform;
+import sk.util.vector.Vector2f;
+
+/**
+ * Measures how the world scales with the number of bodies. Scenes of
+ * boxes falling onto terrain, with a few triggers and two layers, are
+ * generated and stepped without anything being drawn. The results are
+ * printed as CSV, one line for each scene and broad phase, so they can
+ * be plotted and compared between versions.
+ * <p>
+ * It lives in <code>lib/bench</code>, so it isn't shipped with the game.
+ * Compile it together with <code>lib/src</code> and run it with
+ * <code>java sk.physics.WorldBenchmark [steps] [terrain]</code>,
+ * where terrain is the number of polygons in the ground.
+ * </p>
+ *
+ * @author Ed
+ *
+ */
+public class WorldBenchmark {
+
+	// The number of boxes in the scenes
+	private static final int[] BODIES = { 10, 30, 100, 300, 1000, 3000, 10000 };
+
+	// Brute force tests every pair, so it takes too long for the larger scenes
+	private static final int MAX_BRUTE_FORCE = 1000;
+
+	// The steps taken before measuring, so the boxes have landed
+	private static final int SETTLE_STEPS = 60;
+
+	// The steps taken with each broad phase before anything is measured,
+	// so the code is compiled by then
+	private static final int WARM_UP_STEPS = 500;
+
+	// The size of the boxes and the space between them when they are dropped
+	private static final float BOX_SIZE = 0.4f;
+	private static final float BOX_SPACING = 0.6f;
+
+	public static void main(String[] args) {
+		int steps = args.length < 1 ? 200 : Integer.parseInt(args[0]);
+		int terrain = args.length < 2 ? 50 : Integer.parseInt(args[1]);
+
+		for (BroadPhase broadPhase : new BroadPhase[] { new BruteForce(), new SpatialHash(1.0f), new SweepAndPrune() }) {
+			World world = createScene(300, terrain, 1L);
+			world.setBroadPhase(broadPhase);
+			world.step(WARM_UP_STEPS);
+		}
+
+		System.out.println("bodies,terrain,broadphase,ns_per_step,pairs_per_step,"
+				+ "shape_tests_per_step,sat_tests_per_step,bytes_per_step");
+		for (int bodies : BODIES) {
+			if (bodies <= MAX_BRUTE_FORCE) {
+				run(bodies, terrain, new BruteForce(), steps);
+			}
+			run(bodies, terrain, new SpatialHash(1.0f), steps);
+			run(bodies, terrain, new SweepAndPrune(), steps);
+		}
+	}
+
+	/**
+	 * Settles a scene, then steps it and prints a line of averages.
+	 */
+	private static void run(int bodies, int terrain, BroadPhase broadPhase, int steps) {
+		World world = createScene(bodies, terrain, 1234L);
+		world.setBroadPhase(broadPhase);
+		world.getStats().enabled = true;
+		world.step(SETTLE_STEPS);
+
+		long pairs = 0;
+		long shapeTests = 0;
+		long satTests = 0;
+		long allocated = allocatedBytes();
+		long start = System.nanoTime();
+		for (int i = 0; i < steps; i++) {
+			world.step(1);
+			PhysicsStats stats = world.getStats();
+			pairs += stats.pairs;
+			shapeTests += stats.shapeTests;
+			satTests += stats.satTests;
+		}
+		long time = System.nanoTime() - start;
+		long bytes = allocated < 0 ? -1 : (allocatedBytes() - allocated) / steps;
+
+		System.out.println(bodies + "," + terrain + "," + broadPhase.getClass().getSimpleName() + ","
+				+ time / steps + "," + pairs / steps + "," + shapeTests / steps + ","
+				+ satTests / steps + "," + bytes);
+	}
+
+	/**
+	 * Creates a scene with dynamic boxes in a grid above the ground.
+	 * Every other box is on a layer of its own, so layers are tested
+	 * too, and there is a static trigger for every ten boxes along the
+	 * ground. The same seed always gives the same scene.
+	 *
+	 * @param bodies the number of boxes.
+	 * @param terrain the number of polygons the ground is made of.
+	 * @param seed the seed of the random jitter.
+	 * @return the world with the scene.
+	 */
+	public static World createScene(int bodies, int terrain, long seed) {
+		Random random = new Random(seed);
+		World world = new World();
+		world.gravity = new Vector2f(0.0f, -2.8f);
+
+		int columns = (int) Math.ceil(Math.sqrt(bodies * 4.0));
+		float width = columns * BOX_SPACING;
+
+		// The ground is one static body, like the terrain of a level
+		ArrayList<Shape> ground = new ArrayList<Shape>();
+		float piece = width / terrain;
+		for (int i = 0; i < terrain; i++) {
+			ground.add(polygon(random, (i + 0.5f) * piece, (random.nextFloat() - 0.5f) * 0.2f, piece * 0.6f));
+		}
+		Body body = new Body(false, 1, 100, 0, ground);
+		body.decouple(new Transform());
+		body.setLayer((short) 0b11);
+		world.addBody(body);
+
+		for (int i = 0; i < bodies; i++) {
+			Transform t = new Transform();
+			t.position.set((i % columns + 0.5f) * BOX_SPACING + (random.nextFloat() - 0.5f) * 0.1f,
+					2.0f + (i / columns) * BOX_SPACING);
+			t.rotation = random.nextFloat() * 0.5f;
+
+			Body box = new Body(1, 1, 0, box(BOX_SIZE * 0.5f));
+			box.decouple(t);
+			box.setLayer((short) (1 + (i & 1)));
+			world.addBody(box);
+		}
+
+		for (int i = 0; i < bodies / 10; i++) {
+			Transform t = new Transform();
+			t.position.set(random.nextFloat() * width, 1.0f);
+
+			Body trigger = new Body(false, 1, 0, box(0.5f));
+			trigger.decouple(t);
+			trigger.setTrigger(true);
+			trigger.setLayer((short) 0b11);
+			world.addBody(trigger);
+		}
+		return world;
+	}
+
+	/**
+	 * Creates a square with the center at the origin.
+	 */
+	private static Shape box(float half) {
+		return new Shape(new Vector2f(-half, -half), new Vector2f(half, -half),
+				new Vector2f(half, half), new Vector2f(-half, half));
+	}
+
+	/**
+	 * Creates a convex polygon with 4 to 6 points at a random angle.
+	 */
+	private static Shape polygon(Random random, float x, float y, float radius) {
+		int sides = 4 + random.nextInt(3);
+		double offset = random.nextDouble() * Math.PI;
+		Vector2f[] points = new Vector2f[sides];
+		for (int i = 0; i < sides; i++) {
+			double angle = offset + Math.PI * 2.0 * i / sides;
+			points[i] = new Vector2f(x + radius * (float) Math.cos(angle), y + radius * (float) Math.sin(angle));
+		}
+		return new Shape(points);
+	}
+
+	/**
+	 * Returns how many bytes this thread has allocated, or -1
+	 * if the virtual machine can't tell.
+	 */
+	private static long allocatedBytes() {
+		ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if (!(bean instanceof com.sun.management.ThreadMXBean)) return -1;
+		return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+}
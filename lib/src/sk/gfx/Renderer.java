@@ -41,8 +41,8 @@ public class Renderer extends Component {
 		//Send view matrix
 		ShaderProgram.ORTHO.sendM4("view", camera.getMatrix());
 		
-		//Send model matrix
-		ShaderProgram.ORTHO.sendM4("model", transform.getMatrix());
+		//Send model matrix, between the latest physics steps
+		ShaderProgram.ORTHO.sendM4("model", transform.getInterpolatedMatrix());
 		
 		ShaderProgram.ORTHO.send1i("t_sampler", 0);
 		
@@ -10,6 +10,13 @@ public class Transform extends Component {
 	public Vector2f scale = new Vector2f(1, 1);
 	public float rotation = 0;
 	
+	// Where the physics moved the transform from and to in its latest
+	// step, and how far into the next step the world is
+	private float previousX, previousY;
+	private float currentX, currentY;
+	private float alpha = 1.0f;
+	private boolean interpolated = false;
+	
 	/**
 	 * 
 	 * Returns a matrix representation of this transform.
@@ -17,9 +24,64 @@ public class Transform extends Component {
 	 * @return a matrix representation of the transform.
 	 */
 	public Matrix4f getMatrix() {
+		return getMatrix(position.getX(), position.getY());
+	}
+	
+	/**
+	 * 
+	 * Returns a matrix representation of this transform, placed between
+	 * the positions before and after the latest physics step. If the
+	 * position has been changed since that step, it is used as is.
+	 * 
+	 * @return a matrix representation of the interpolated transform.
+	 */
+	public Matrix4f getInterpolatedMatrix() {
+		if (!interpolated || position.x != currentX || position.y != currentY) {
+			return getMatrix();
+		}
+		return getMatrix(previousX + (currentX - previousX) * alpha,
+						 previousY + (currentY - previousY) * alpha);
+	}
+	
+	/**
+	 * 
+	 * Remembers where the transform was before the latest physics
+	 * step, so it can be drawn in between two steps. The current
+	 * position is taken as where the step left it.
+	 * 
+	 * @param previousX the x position before the step.
+	 * @param previousY the y position before the step.
+	 * @param alpha how far to go from the previous position to the current, 0 to 1.
+	 */
+	public void setInterpolation(float previousX, float previousY, float alpha) {
+		this.previousX = previousX;
+		this.previousY = previousY;
+		this.currentX = position.x;
+		this.currentY = position.y;
+		this.alpha = alpha;
+		this.interpolated = true;
+	}
+	
+	/**
+	 * 
+	 * Moves the transform further towards where the latest physics
+	 * step left it, without changing the positions it goes between.
+	 * Used on frames where no step was taken.
+	 * 
+	 * @param alpha how far to go from the previous position to the current, 0 to 1.
+	 */
+	public void setInterpolationAlpha(float alpha) {
+		this.alpha = alpha;
+	}
+	
+	/**
+	 * 
+	 * Builds the matrix with the specified translation.
+	 */
+	private Matrix4f getMatrix(float x, float y) {
 		Matrix4f translation = (Matrix4f) new Matrix4f().setIdentity();
-		translation.m30 = position.getX();
-		translation.m31 = position.getY();
+		translation.m30 = x;
+		translation.m31 = y;
 		
 		Matrix4f rot = (Matrix4f) new Matrix4f().setIdentity();
 		rot.m00 = (float) Math.cos(rotation);
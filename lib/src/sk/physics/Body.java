@@ -1,7 +1,9 @@
 package sk.physics;
 
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import sk.debug.Debug;
 import sk.entity.Component;
@@ -20,9 +22,23 @@ import sk.util.vector.Vector3f;
  */
 public class Body extends Component {
 	
-	// Force and velocity
-	private Vector2f velocity = new Vector2f();
-	private Vector2f force = new Vector2f();
+	// The number of bytes a body takes in a snapshot of the world
+	static final int SNAPSHOT_BYTES = 15 * 4 + 4 + 2 + 4 + 4 + 1 + 4 + 1;
+	
+	// The flags of a body in a snapshot
+	private static final int SNAPSHOT_DYNAMIC = 1;
+	private static final int SNAPSHOT_KINEMATIC = 2;
+	private static final int SNAPSHOT_TRIGGER = 4;
+	private static final int SNAPSHOT_SLEEPING = 8;
+	private static final int SNAPSHOT_SKIPPED = 16;
+	
+	// Gives every body a unique id, bodies may be created on any thread
+	private static final AtomicInteger nextId = new AtomicInteger();
+	private final int id = nextId.getAndIncrement();
+	
+	// Force, velocity and inverted mass live in the store
+	private final BodyStore store = BodyStore.SHARED;
+	final int slot = store.allocate(this, BodyStore.DYNAMIC);
 	
 	// One way collisions
 	private Vector2f direction = new Vector2f(0, 1);
@@ -30,7 +46,29 @@ public class Body extends Component {
 	
 	// The mass
 	private float mass = 0.0f;
-	private float invertedMass = 0.0f;
+	
+	// Sleeping bodies are left alone by the world until something wakes them
+	private boolean sleeping = false;
+	
+	// Where the body was in the previous step, or where
+	// it fell asleep, moving it from there wakes it
+	private float restX, restY;
+	
+	// The number of steps in a row the body has been almost still
+	int stillSteps = 0;
+	
+	// The island the body fell asleep with, -1 if it never has
+	int island = -1;
+	
+	// Every how many steps the world moves the body, which is more than
+	// one far from the focus, and if the body was left out of this step
+	int rate = 1;
+	boolean skipped = false;
+	
+	// The step the world last moved the body in, and how many steps
+	// it was moved by then
+	int lastStep = 0;
+	int elapsed = 1;
 	
 	// The friction coefficient
 	private float friction = 0.0f;
@@ -41,9 +79,15 @@ public class Body extends Component {
 	// If the body is dynamic
 	private boolean dynamic = true;
 	
+	// If the body is moved by its velocity alone and pushes others without being pushed
+	private boolean kinematic = false;
+	
 	// If the body should trigger any collision response
 	private boolean trigger = false;
 	
+	// If the body moves fast enough to need continuous collision checks
+	private boolean bullet = false;
+	
 	// A bit-mask that says with which bodies we should collide
 	private short layer = 256;
 	
@@ -53,12 +97,35 @@ public class Body extends Component {
 	// A quick reference to the transform
 	private Transform transform = new Transform();
 	
-	// A tag that makes it easier to search for collisions
+	// A tag that makes it easier to search for collisions, and its bit
 	private String tag = "";
+	private int tagBits = 0;
 	
 	// A list of all collisions this frame
 	private ArrayList<Collision> collisions = new ArrayList<Collision>();
 	
+	// The bodies this trigger overlapped in the latest step
+	ArrayList<Body> overlaps = null;
+	
+	// Where this trigger was when the overlaps were last looked for,
+	// NaN until they have been
+	float overlapMinX = Float.NaN, overlapMinY, overlapMaxX, overlapMaxY, overlapRotation;
+	
+	// The world space bounds of all the shapes, updated by the world each step
+	float minX, minY, maxX, maxY;
+	
+	// The shapes scaled and rotated, updated by the world each step
+	TransformedShapes geometry = new TransformedShapes();
+	
+	// Changes whenever shapes are added or removed
+	private int shapeVersion = 0;
+	
+	// A tree over the shapes, only used when there are a lot of them
+	private ShapeTree shapeTree = null;
+	
+	// The transform the shape tree was last fitted to
+	private float treeX, treeY, treeRotation, treeScaleX, treeScaleY;
+	
 	/**
 	 * Creates a new body with the specified shapes. 
 	 * 
@@ -168,6 +235,16 @@ public class Body extends Component {
 		}
 	}
 	
+	/**
+	 * Returns the unique id of this body. Bodies created
+	 * later always have larger ids.
+	 * 
+	 * @return the id of this body.
+	 */
+	public int getId() {
+		return id;
+	}
+	
 	/**
 	 * Decouples the body from the entity component system, so an entity isn't needed.
 	 * 
@@ -175,6 +252,7 @@ public class Body extends Component {
 	 */
 	public void decouple(Transform transform) {
 		this.transform = transform;
+		shapeTree = null;
 	}
 
 	/**
@@ -192,23 +270,6 @@ public class Body extends Component {
 		return null;
 	}
 	
-	/**
-	 * Returns a list of all the collisions where the other object
-	 * matches the tag. 
-	 * 
-	 * @param tag the tag you want to search for.
-	 * @return a list of collisions with the tag.
-	 */
-	public Collision[] getCollisionsWithTag(String tag) {
-		ArrayList<Collision> collisions = new ArrayList<Collision>();
-		for (Collision c : collisions) {
-			if (c.other.getTag().equals(tag)) {
-				collisions.add(c);
-			}
-		}
-		return (Collision[]) collisions.toArray();
-	}
-	
 	/**
 	 * Performs a dot operation with all collision normals
 	 * against a vector and returns the max result.
@@ -285,8 +346,30 @@ public class Body extends Component {
 	 * @return true if the tag was found on a colliding body.
 	 */
 	public boolean isCollidingWithTag(String tag) {
+		return isCollidingWithTags(Tags.bit(tag));
+	}
+	
+	/**
+	 * Returns whether or not there are any collisions with
+	 * any of the tags.
+	 * 
+	 * @param tags the tags you want to search for.
+	 * @return true if one of the tags was found on a colliding body.
+	 */
+	public boolean isCollidingWithTags(String... tags) {
+		return isCollidingWithTags(Tags.mask(tags));
+	}
+	
+	/**
+	 * Returns whether or not there are any collisions with
+	 * bodies that have any of the tags in the mask.
+	 * 
+	 * @param tags the mask of tags, from {@link Tags#mask(String...)}.
+	 * @return true if one of the tags was found on a colliding body.
+	 */
+	public boolean isCollidingWithTags(int tags) {
 		for (Collision c : collisions) {
-			if (c.other.getTag().equals(tag)) {
+			if (c.other.hasTags(tags)) {
 				return true;
 			}
 		}
@@ -301,8 +384,9 @@ public class Body extends Component {
 	 * from the this body.
 	 * 
 	 * @param c the collision our superior overlords wish to add.
+	 * @return the collision as seen by this body.
 	 */
-	protected void addCollision(Collision in) {
+	protected Collision addCollision(Collision in) {
 		Collision c = new Collision(in);
 		c.normal = in.normal.clone();
 		c.distance = in.distance.clone();
@@ -322,6 +406,7 @@ public class Body extends Component {
 		}
 
 		collisions.add(c);
+		return c;
 	}
 	
 	/**
@@ -353,10 +438,54 @@ public class Body extends Component {
 	 */
 	public Body setDynamic(boolean dynamic) {
 		this.dynamic = dynamic;
+		store.setFlag(slot, BodyStore.DYNAMIC, dynamic);
+		if (dynamic) kinematic = false;
+		wake();
 		
 		return this;
 	}
 	
+	/**
+	 * Returns whether or not this body is kinematic.
+	 * 
+	 * @return true if the body is kinematic.
+	 */
+	public boolean isKinematic() {
+		return kinematic;
+	}
+	
+	/**
+	 * Sets whether or not this body should be kinematic. A kinematic
+	 * body is moved by its velocity and nothing else, forces and
+	 * collisions never change it. It pushes dynamic bodies out of the
+	 * way, wakes the ones that sleep, and carries the ones that stand
+	 * on it along with it. Making a body kinematic makes it non-dynamic.
+	 * 
+	 * @param kinematic whether the body should be kinematic or not.
+	 * @return this body instance.
+	 */
+	public Body setKinematic(boolean kinematic) {
+		if (kinematic) {
+			setDynamic(false);
+			store.forceX[slot] = store.forceY[slot] = 0.0f;
+		}
+		this.kinematic = kinematic;
+		
+		return this;
+	}
+	
+	/**
+	 * Sets the velocity the body is carried by during the next step,
+	 * on top of its own velocity.
+	 * 
+	 * @param x the velocity along the x axis.
+	 * @param y the velocity along the y axis.
+	 */
+	void carry(float x, float y) {
+		store.carryX[slot] = x;
+		store.carryY[slot] = y;
+	}
+	
 	/**
 	 * Sets the friction constant (mu) for this body.
 	 * <br>
@@ -398,7 +527,7 @@ public class Body extends Component {
 			throw new IllegalArgumentException("Zero or negative mass supplied.");
 		}
 		this.mass = mass;
-		this.invertedMass = 1.0f / mass;
+		store.invMass[slot] = 1.0f / mass;
 		
 		return this;
 	}
@@ -418,7 +547,7 @@ public class Body extends Component {
 	 * @return the inverted mass of this body.
 	 */
 	public float getInvertedMass() {
-		return invertedMass;
+		return store.invMass[slot];
 	}
 	
 	/**
@@ -427,7 +556,7 @@ public class Body extends Component {
 	 * @return the velocity of the body.
 	 */
 	public Vector2f getVelocity() {
-		return velocity.clone();
+		return new Vector2f(store.velX[slot], store.velY[slot]);
 	}
 	
 	/**
@@ -436,7 +565,9 @@ public class Body extends Component {
 	 * @return the velocity after the next frame if nothing unexpected affects the body.
 	 */
 	public Vector2f getNextVelocity() {
-		return getVelocity().add(force.clone().scale(invertedMass));
+		float invertedMass = store.invMass[slot];
+		return new Vector2f(store.velX[slot] + store.forceX[slot] * invertedMass,
+							store.velY[slot] + store.forceY[slot] * invertedMass);
 	}
 	
 	/**
@@ -468,35 +599,46 @@ public class Body extends Component {
 	}
 	
 	/**
-	 * Adds a force to this body.
+	 * Adds a force to this body. Kinematic bodies ignore it.
 	 * 
 	 * @param force the force to add to this body.
 	 * @return this body instance.
 	 */
 	public Body addForce(Vector2f force) {
-		Vector2f.add((Vector2f) force, this.force, this.force);
+		if (kinematic) return this;
+		store.forceX[slot] += force.x;
+		store.forceY[slot] += force.y;
+		wake();
 		
 		return this;
 	}
 	
 	/**
-	 * Adds a force along the x axis to this body.
+	 * Adds a force along the x axis to this body. Kinematic bodies ignore it.
 	 * 
 	 * @param x the force to apply.
 	 * @return this body instance.
 	 */
 	public Body addForceX(float x) {
-		return addForce(new Vector2f(x, 0));
+		if (kinematic) return this;
+		store.forceX[slot] += x;
+		wake();
+		
+		return this;
 	}
 	
 	/**
-	 * Adds a force along the y axis to this body.
+	 * Adds a force along the y axis to this body. Kinematic bodies ignore it.
 	 * 
 	 * @param y the force to apply.
 	 * @return this body instance.
 	 */
 	public Body addForceY(float y) {
-		return addForce(new Vector2f(0, y));
+		if (kinematic) return this;
+		store.forceY[slot] += y;
+		wake();
+		
+		return this;
 	}
 	
 	/**
@@ -512,7 +654,9 @@ public class Body extends Component {
 	 * @return this body instance.
 	 */
 	public Body addVelocity(Vector2f vel) {
-		Vector2f.add(vel, velocity, velocity);
+		store.velX[slot] += vel.x;
+		store.velY[slot] += vel.y;
+		wake();
 		
 		return this;
 	}
@@ -530,7 +674,8 @@ public class Body extends Component {
 	 * @return this body instance.
 	 */
 	public Body addVelocityX(float x) {
-		Vector2f.add(new Vector2f(x, 0), velocity, velocity);
+		store.velX[slot] += x;
+		wake();
 		
 		return this;
 	}
@@ -548,7 +693,8 @@ public class Body extends Component {
 	 * @return this body instance.
 	 */
 	public Body addVelocityY(float y) {
-		Vector2f.add(new Vector2f(0, y), velocity, velocity);
+		store.velY[slot] += y;
+		wake();
 		
 		return this;
 	}
@@ -566,7 +712,9 @@ public class Body extends Component {
 	 * @return this body instance.
 	 */
 	public Body setVelocity(Vector2f vel) {
-		velocity = vel.clone();
+		store.velX[slot] = vel.x;
+		store.velY[slot] = vel.y;
+		wake();
 		
 		return this;
 	}
@@ -584,7 +732,8 @@ public class Body extends Component {
 	 * @return this body instance.
 	 */
 	public Body setVelocityX(float x) {
-		velocity.x = x;
+		store.velX[slot] = x;
+		wake();
 		
 		return this;
 	}
@@ -602,7 +751,8 @@ public class Body extends Component {
 	 * @return this body instance.
 	 */
 	public Body setVelocityY(float y) {
-		velocity.y = y;
+		store.velY[slot] = y;
+		wake();
 		
 		return this;
 	}
@@ -623,6 +773,7 @@ public class Body extends Component {
 	@Override
 	public void init() {
 		transform = getParent().get(Transform.class);
+		shapeTree = null;
 	}
 	
 	@SuppressWarnings("unchecked")
@@ -634,19 +785,278 @@ public class Body extends Component {
 	}
 	
 	/**
-	 * Steps the physics simulation forward by one step.
+	 * Moves the body by its velocity, after turning its forces into
+	 * velocity, and forgets the collisions from the last step. Gravity
+	 * is not added. Sleeping bodies only forget their collisions.
 	 * 
-	 * @param delta the time passed since the last frame.
+	 * @param delta the length of the step.
+	 * @deprecated the world integrates all of its bodies at once, add the
+	 * body to a {@link World} instead of stepping it yourself.
 	 */
+	@Deprecated
 	public void step(double delta) {
-		if (isDynamic() && !isTrigger()) {
-			Vector2f.add(velocity, (Vector2f) force.scale(invertedMass), velocity);
-			force.set(0.0f, 0.0f);			
+		if (sleeping) {
+			collisions.clear();
+			return;
+		}
+		
+		Vector2f position = transform.position;
+		store.beginStep();
+		try {
+			store.posX[slot] = position.x;
+			store.posY[slot] = position.y;
+			store.integrate(new int[] { slot }, 1, 0.0f, 0.0f, (float) delta);
+			position.x = store.posX[slot];
+			position.y = store.posY[slot];
+		} finally {
+			store.endStep();
+		}
+		collisions.clear();
+	}
+	
+	/**
+	 * Returns whether or not this body is sleeping. A sleeping body
+	 * isn't moved by the world and is treated as static until
+	 * something touches it, or it is pushed or moved.
+	 * 
+	 * @return true if the body is sleeping.
+	 */
+	public boolean isSleeping() {
+		return sleeping;
+	}
+	
+	/**
+	 * Wakes the body up if it is sleeping. The world wakes the
+	 * rest of the island it fell asleep with in the next step.
+	 * 
+	 * @return this body instance.
+	 */
+	public Body wake() {
+		if (sleeping) {
+			sleeping = false;
+			stillSteps = 0;
 		}
-		Vector2f.add(transform.position, (Vector2f) velocity.clone().scale((float) delta), transform.position);
+		
+		return this;
+	}
+	
+	/**
+	 * Puts the body to sleep, stopping it completely.
+	 * 
+	 * @param island the island the body falls asleep with.
+	 */
+	void sleep(int island) {
+		sleeping = true;
+		this.island = island;
+		store.velX[slot] = store.velY[slot] = 0.0f;
+		store.forceX[slot] = store.forceY[slot] = 0.0f;
+		restX = transform.position.x;
+		restY = transform.position.y;
+	}
+	
+	/**
+	 * Checks if the body has been moved since it fell asleep,
+	 * by something other than the world.
+	 * 
+	 * @return true if the body isn't where it fell asleep.
+	 */
+	boolean wasMoved() {
+		return restX != transform.position.x || restY != transform.position.y;
+	}
+	
+	/**
+	 * Returns how far the body has moved since the last time this
+	 * was called. The distance is used instead of the velocity since
+	 * the solver pushes resting bodies back out of the ground, which
+	 * leaves them with a velocity even though they don't move.
+	 * 
+	 * @return the squared distance moved.
+	 */
+	float movedSquared() {
+		float x = transform.position.x - restX;
+		float y = transform.position.y - restY;
+		restX = transform.position.x;
+		restY = transform.position.y;
+		return x * x + y * y;
+	}
+	
+	/**
+	 * Writes everything the world changes about the body while
+	 * stepping, along with the flags and the layer, in a layout
+	 * of {@link #SNAPSHOT_BYTES} bytes.
+	 * 
+	 * @param buffer the buffer to write to.
+	 */
+	void snapshot(ByteBuffer buffer) {
+		buffer.putFloat(transform.position.x);
+		buffer.putFloat(transform.position.y);
+		buffer.putFloat(transform.rotation);
+		buffer.putFloat(transform.scale.x);
+		buffer.putFloat(transform.scale.y);
+		buffer.putFloat(store.velX[slot]);
+		buffer.putFloat(store.velY[slot]);
+		buffer.putFloat(store.forceX[slot]);
+		buffer.putFloat(store.forceY[slot]);
+		buffer.putFloat(store.carryX[slot]);
+		buffer.putFloat(store.carryY[slot]);
+		buffer.putFloat(store.prevX[slot]);
+		buffer.putFloat(store.prevY[slot]);
+		buffer.putFloat(restX);
+		buffer.putFloat(restY);
+		
+		int flags = 0;
+		if (dynamic) flags |= SNAPSHOT_DYNAMIC;
+		if (kinematic) flags |= SNAPSHOT_KINEMATIC;
+		if (trigger) flags |= SNAPSHOT_TRIGGER;
+		if (sleeping) flags |= SNAPSHOT_SLEEPING;
+		if (skipped) flags |= SNAPSHOT_SKIPPED;
+		buffer.putInt(flags);
+		buffer.putShort(layer);
+		buffer.putInt(stillSteps);
+		buffer.putInt(island);
+		buffer.put((byte) rate);
+		buffer.putInt(lastStep);
+		buffer.put((byte) elapsed);
+	}
+	
+	/**
+	 * Reads back what {@link #snapshot(ByteBuffer)} wrote. Nothing
+	 * is woken up, the body is left exactly as it was.
+	 * 
+	 * @param buffer the buffer to read from.
+	 */
+	void restore(ByteBuffer buffer) {
+		transform.position.x = buffer.getFloat();
+		transform.position.y = buffer.getFloat();
+		transform.rotation = buffer.getFloat();
+		transform.scale.x = buffer.getFloat();
+		transform.scale.y = buffer.getFloat();
+		store.velX[slot] = buffer.getFloat();
+		store.velY[slot] = buffer.getFloat();
+		store.forceX[slot] = buffer.getFloat();
+		store.forceY[slot] = buffer.getFloat();
+		store.carryX[slot] = buffer.getFloat();
+		store.carryY[slot] = buffer.getFloat();
+		store.prevX[slot] = buffer.getFloat();
+		store.prevY[slot] = buffer.getFloat();
+		restX = buffer.getFloat();
+		restY = buffer.getFloat();
+		
+		int flags = buffer.getInt();
+		dynamic = (flags & SNAPSHOT_DYNAMIC) != 0;
+		kinematic = (flags & SNAPSHOT_KINEMATIC) != 0;
+		trigger = (flags & SNAPSHOT_TRIGGER) != 0;
+		sleeping = (flags & SNAPSHOT_SLEEPING) != 0;
+		skipped = (flags & SNAPSHOT_SKIPPED) != 0;
+		store.setFlag(slot, BodyStore.DYNAMIC, dynamic);
+		store.setFlag(slot, BodyStore.TRIGGER, trigger);
+		layer = buffer.getShort();
+		stillSteps = buffer.getInt();
+		island = buffer.getInt();
+		rate = buffer.get();
+		lastStep = buffer.getInt();
+		elapsed = buffer.get();
+		collisions.clear();
+	}
+	
+	/**
+	 * Forgets the collisions of the previous step. The world
+	 * calls this after it has integrated the body in the store.
+	 */
+	void clearCollisions() {
 		collisions.clear();
 	}
 
+	/**
+	 * Scales and rotates the shapes of this body with the
+	 * current transform, so the collision test can use them
+	 * without doing any transform math.
+	 */
+	void updateGeometry() {
+		// Kinematic bodies move every step, so baking them is a waste
+		geometry.update(shapes, transform, !dynamic && !kinematic, shapeVersion);
+	}
+	
+	/**
+	 * Recalculates the world space bounds of this body. The bounds
+	 * enclose the boxes around all the shapes, so anything that
+	 * passes the per shape check in the world also overlaps
+	 * these bounds.
+	 */
+	void updateBounds() {
+		updateGeometry();
+		ShapeTree tree = getShapeTree();
+		if (tree != null) {
+			minX = tree.getMinX();
+			minY = tree.getMinY();
+			maxX = tree.getMaxX();
+			maxY = tree.getMaxY();
+			return;
+		}
+		
+		if (geometry.baked) {
+			minX = geometry.minX;
+			minY = geometry.minY;
+			maxX = geometry.maxX;
+			maxY = geometry.maxY;
+			return;
+		}
+		
+		minX = minY = Float.MAX_VALUE;
+		maxX = maxY = -Float.MAX_VALUE;
+		for (int i = 0; i < shapes.size(); i++) {
+			Shape s = shapes.get(i);
+			minX = Math.min(minX, geometry.getMinX(i, s, transform));
+			minY = Math.min(minY, geometry.getMinY(i, s, transform));
+			maxX = Math.max(maxX, geometry.getMaxX(i, s, transform));
+			maxY = Math.max(maxY, geometry.getMaxY(i, s, transform));
+		}
+	}
+	
+	/**
+	 * Returns the tree over the shapes of this body, fitted to the
+	 * current transform. The tree is built the first time it is
+	 * needed and only refitted when the transform has changed,
+	 * so for static bodies it is only built once.
+	 * 
+	 * @return the shape tree, or null if the body has too few shapes for one.
+	 */
+	ShapeTree getShapeTree() {
+		if (shapes.size() < ShapeTree.MIN_SHAPES) return null;
+		
+		if (shapeTree != null && treeX == transform.position.x && treeY == transform.position.y &&
+				treeRotation == transform.rotation &&
+				treeScaleX == transform.scale.x && treeScaleY == transform.scale.y) {
+			return shapeTree;
+		}
+		
+		// The boxes come from the transformed shapes
+		updateGeometry();
+		if (shapeTree == null) {
+			shapeTree = new ShapeTree(shapes, transform, geometry);
+		} else {
+			shapeTree.refit(shapes, transform, geometry);
+		}
+		
+		treeX = transform.position.x;
+		treeY = transform.position.y;
+		treeRotation = transform.rotation;
+		treeScaleX = transform.scale.x;
+		treeScaleY = transform.scale.y;
+		return shapeTree;
+	}
+	
+	/**
+	 * Checks if the bounds of this body overlaps the bounds of
+	 * the other body. Both bounds have to be up to date.
+	 * 
+	 * @param b the other body.
+	 * @return true if the bounds overlap.
+	 */
+	boolean boundsOverlap(Body b) {
+		return minX <= b.maxX && b.minX <= maxX &&
+			   minY <= b.maxY && b.minY <= maxY;
+	}
 	
 	/**
 	 * Returns the momentum of this body.
@@ -670,12 +1080,38 @@ public class Body extends Component {
 	 * A trigger body will not generate collision response.
 	 * It will only check whether something is overlapping
 	 * with it.
+	 * The collisions of an overlap have no normal and no depth.
 	 * 
 	 * @param trigger if the body should be a trigger.
 	 * @return this body instance.
 	 */
 	public Body setTrigger(boolean trigger) {
 		this.trigger = trigger;
+		store.setFlag(slot, BodyStore.TRIGGER, trigger);
+		
+		return this;
+	}
+	
+	/**
+	 * @return true if this body is a bullet.
+	 */
+	public boolean isBullet() {
+		return bullet;
+	}
+	
+	/**
+	 * Sets whether this body should be a bullet or not.
+	 * 
+	 * The world sweeps bullets along their path every step, so
+	 * they stop at the first thing they hit instead of passing
+	 * through thin walls when they move fast. This costs more
+	 * than a normal body, so only use it for fast bodies.
+	 * 
+	 * @param bullet if the body should be a bullet.
+	 * @return this body instance.
+	 */
+	public Body setBullet(boolean bullet) {
+		this.bullet = bullet;
 		
 		return this;
 	}
@@ -699,6 +1135,7 @@ public class Body extends Component {
 	 */
 	public Body setLayer(short layer) {
 		this.layer = layer;
+		wake();
 		
 		return this;
 	}
@@ -724,17 +1161,41 @@ public class Body extends Component {
 	}
 	
 	/**
-	 * Sets the tag of this body.
+	 * Sets the tag of this body. Each tag is given a bit by
+	 * {@link Tags}, and there are only 32 of them, so no more
+	 * than 32 different tags may ever be used.
 	 * 
 	 * @param tag the new tag of this body.
 	 * @return this body instance.
+	 * @throws IllegalStateException if the tag is new and all 32 bits
+	 * have been handed out.
 	 */
 	public Body setTag(String tag) {
 		this.tag = tag;
+		tagBits = Tags.bit(tag);
 		
 		return this;
 	}
 	
+	/**
+	 * Returns the bit of the tag of this body, handed out by {@link Tags}.
+	 * 
+	 * @return the bit of the tag, 0 if the body has no tag.
+	 */
+	public int getTagBits() {
+		return tagBits;
+	}
+	
+	/**
+	 * Checks if this body has any of the tags in the mask.
+	 * 
+	 * @param tags the mask of tags, from {@link Tags#mask(String...)}.
+	 * @return true if the tag of this body is in the mask.
+	 */
+	public boolean hasTags(int tags) {
+		return (tagBits & tags) != 0;
+	}
+	
 	/**
 	 * Returns the number of shapes in this body.
 	 * 
@@ -759,6 +1220,8 @@ public class Body extends Component {
 		}
 		
 		shapes.add(shape);
+		shapeTree = null;
+		shapeVersion++;
 		return this;
 	}
 	
@@ -787,6 +1250,8 @@ public class Body extends Component {
 		for (; i < shapes.size(); i++) {
 			if (shapes.get(i) == shape) {
 				shapes.remove(i);
+				shapeTree = null;
+				shapeVersion++;
 				return true;
 			}
 		}
@@ -0,0 +1,257 @@
+package sk.physics;
+
+import java.lang.ref.WeakReference;
+import java.util.Arrays;
+
+/**
+ * Holds the state of the bodies in flat arrays, one slot per body,
+ * instead of in separate vector objects on each body. The bodies
+ * only keep the index of their slot.
+ * <p>
+ * This keeps the integration step a tight loop over primitive
+ * arrays. The position is still owned by the transform of the body,
+ * since that is what everything else reads. It is copied in before
+ * integrating and copied back out afterwards. The position from
+ * before the latest step is kept as well, for drawing between steps.
+ * </p>
+ * <p>
+ * Bodies riding a kinematic body are carried along by its velocity
+ * on top of their own, without it becoming part of their velocity.
+ * </p>
+ * <p>
+ * A body may be added to more than one world, so all bodies share
+ * the same store. Slots of bodies that have been garbage collected
+ * are reused before the store grows.
+ * </p>
+ * <p>
+ * Worlds may be stepped on different threads at the same time, so
+ * they wrap their steps in {@link #beginStep()} and {@link #endStep()}.
+ * Growing replaces the arrays, so it waits until no other thread is
+ * in a step, or any changes they made to the old arrays would be lost.
+ * A thread that creates a body in the middle of a step doesn't use
+ * the arrays while it waits, so it doesn't hold the others up.
+ * </p>
+ *
+ * @author Ed
+ *
+ */
+class BodyStore {
+
+	// The store every body lives in
+	static final BodyStore SHARED = new BodyStore();
+
+	// The flags
+	static final int DYNAMIC = 1;
+	static final int TRIGGER = 2;
+
+	float[] posX = new float[64];
+	float[] posY = new float[64];
+	float[] prevX = new float[64];
+	float[] prevY = new float[64];
+	float[] velX = new float[64];
+	float[] velY = new float[64];
+	float[] forceX = new float[64];
+	float[] forceY = new float[64];
+	float[] invMass = new float[64];
+	float[] carryX = new float[64];
+	float[] carryY = new float[64];
+	int[] flags = new int[64];
+
+	// Who owns each slot, so slots can be reused
+	private WeakReference<?>[] owners = new WeakReference<?>[64];
+	private int size = 0;
+
+	// The threads that are in a step, and if the arrays are being replaced
+	private int stepping = 0;
+	private boolean growing = false;
+
+	// How many steps the current thread is in
+	private final ThreadLocal<int[]> depth = new ThreadLocal<int[]>() {
+		@Override
+		protected int[] initialValue() {
+			return new int[1];
+		}
+	};
+
+	/**
+	 * Marks the start of a step on the current thread. Waits if
+	 * the store is growing.
+	 */
+	synchronized void beginStep() {
+		int[] d = depth.get();
+		if (d[0]++ == 0) {
+			awaitGrowth();
+			stepping++;
+		}
+	}
+
+	/**
+	 * Marks the end of a step on the current thread.
+	 */
+	synchronized void endStep() {
+		int[] d = depth.get();
+		if (--d[0] == 0) {
+			stepping--;
+			notifyAll();
+		}
+	}
+
+	/**
+	 * Gives the body a slot of its own. The slot starts out
+	 * with no velocity and no force.
+	 *
+	 * @param body the body that needs a slot.
+	 * @param flags the flags the slot starts out with.
+	 * @return the slot of the body.
+	 */
+	synchronized int allocate(Body body, int flags) {
+		// A thread in a step doesn't touch the arrays while it is in here
+		boolean inStep = 0 < depth.get()[0];
+		if (inStep) {
+			stepping--;
+			notifyAll();
+		}
+		int slot;
+		try {
+			awaitGrowth();
+			slot = size < owners.length ? size++ : reclaim();
+			if (slot == -1) {
+				growing = true;
+				try {
+					while (0 < stepping) {
+						await();
+					}
+					grow();
+				} finally {
+					growing = false;
+					notifyAll();
+				}
+				slot = size++;
+			}
+		} finally {
+			if (inStep) stepping++;
+		}
+
+		owners[slot] = new WeakReference<Body>(body);
+		posX[slot] = posY[slot] = 0.0f;
+		prevX[slot] = prevY[slot] = 0.0f;
+		velX[slot] = velY[slot] = 0.0f;
+		forceX[slot] = forceY[slot] = 0.0f;
+		invMass[slot] = 0.0f;
+		carryX[slot] = carryY[slot] = 0.0f;
+		this.flags[slot] = flags;
+		return slot;
+	}
+
+	/**
+	 * Waits until no other thread is growing the store.
+	 */
+	private void awaitGrowth() {
+		while (growing) {
+			await();
+		}
+	}
+
+	/**
+	 * Waits for another thread to begin or end a step or a growth.
+	 */
+	private void await() {
+		try {
+			wait();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while waiting for the body store.", e);
+		}
+	}
+
+	/**
+	 * Finds a slot whose body has been garbage collected.
+	 *
+	 * @return the slot, or -1 if all slots are in use.
+	 */
+	private int reclaim() {
+		for (int i = 0; i < size; i++) {
+			if (owners[i].get() == null) return i;
+		}
+		return -1;
+	}
+
+	/**
+	 * Doubles the number of slots.
+	 */
+	private void grow() {
+		int capacity = owners.length * 2;
+		posX = Arrays.copyOf(posX, capacity);
+		posY = Arrays.copyOf(posY, capacity);
+		prevX = Arrays.copyOf(prevX, capacity);
+		prevY = Arrays.copyOf(prevY, capacity);
+		velX = Arrays.copyOf(velX, capacity);
+		velY = Arrays.copyOf(velY, capacity);
+		forceX = Arrays.copyOf(forceX, capacity);
+		forceY = Arrays.copyOf(forceY, capacity);
+		invMass = Arrays.copyOf(invMass, capacity);
+		carryX = Arrays.copyOf(carryX, capacity);
+		carryY = Arrays.copyOf(carryY, capacity);
+		flags = Arrays.copyOf(flags, capacity);
+		owners = Arrays.copyOf(owners, capacity);
+	}
+
+	/**
+	 * Sets or clears a flag of a slot.
+	 *
+	 * @param slot the slot.
+	 * @param flag the flag to change.
+	 * @param set true if the flag should be set.
+	 */
+	void setFlag(int slot, int flag, boolean set) {
+		if (set) {
+			flags[slot] |= flag;
+		} else {
+			flags[slot] &= ~flag;
+		}
+	}
+
+	/**
+	 * Integrates the slots one step. Gravity is added to dynamic
+	 * bodies, forces are turned into velocity for dynamic bodies
+	 * that aren't triggers, and all bodies move by their velocity and
+	 * the velocity they are carried by. The carry only lasts one step.
+	 *
+	 * @param slots the slots to integrate.
+	 * @param count the number of slots.
+	 * @param gravityX the gravity along the x axis, already multiplied by the step length.
+	 * @param gravityY the gravity along the y axis, already multiplied by the step length.
+	 * @param delta the step length.
+	 */
+	void integrate(int[] slots, int count, float gravityX, float gravityY, float delta) {
+		float[] posX = this.posX;
+		float[] posY = this.posY;
+		float[] velX = this.velX;
+		float[] velY = this.velY;
+		float[] forceX = this.forceX;
+		float[] forceY = this.forceY;
+		float[] invMass = this.invMass;
+		float[] carryX = this.carryX;
+		float[] carryY = this.carryY;
+		int[] flags = this.flags;
+
+		for (int i = 0; i < count; i++) {
+			int s = slots[i];
+			int f = flags[s];
+			if ((f & DYNAMIC) != 0) {
+				velX[s] += gravityX;
+				velY[s] += gravityY;
+				if ((f & TRIGGER) == 0) {
+					velX[s] += forceX[s] * invMass[s];
+					velY[s] += forceY[s] * invMass[s];
+					forceX[s] = 0.0f;
+					forceY[s] = 0.0f;
+				}
+			}
+			posX[s] += (velX[s] + carryX[s]) * delta;
+			posY[s] += (velY[s] + carryY[s]) * delta;
+			carryX[s] = 0.0f;
+			carryY[s] = 0.0f;
+		}
+	}
+}
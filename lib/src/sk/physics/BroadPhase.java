@@ -0,0 +1,61 @@
+package sk.physics;
+
+import java.util.ArrayList;
+
+/**
+ * A broad phase finds the pairs of bodies that might be
+ * colliding, so the world doesn't have to run the expensive
+ * shape tests on every pair of bodies.
+ * <p>
+ * Different levels favour different broad phases, so it can
+ * be swapped with {@link World#setBroadPhase(BroadPhase)}.
+ * </p>
+ * 
+ * @author Ed
+ *
+ */
+public interface BroadPhase {
+	
+	/**
+	 * Fills the buffer with every pair of bodies that might be
+	 * colliding. Pairs that aren't allowed to collide according to
+	 * {@link PairBuffer#check(Body, Body)} should be left out. The
+	 * pairs may be added in any order, but only once each.
+	 * <p>
+	 * The bounds of all bodies are up to date when this is called.
+	 * </p>
+	 * 
+	 * @param bodies the bodies in the world.
+	 * @param out the buffer the pairs are added to.
+	 */
+	public void findPairs(ArrayList<Body> bodies, PairBuffer out);
+	
+	/**
+	 * Finds the bodies whose bounds overlap the box. The bounds are
+	 * the ones from the latest call to {@link #findPairs(ArrayList, PairBuffer)},
+	 * and the body list has to be the same as in that call.
+	 * <p>
+	 * The default checks every body. Broad phases that keep a structure
+	 * between the calls should use it to skip bodies that are far away.
+	 * </p>
+	 * 
+	 * @param bodies the bodies in the world.
+	 * @param minX the left edge of the box.
+	 * @param minY the bottom edge of the box.
+	 * @param maxX the right edge of the box.
+	 * @param maxY the top edge of the box.
+	 * @param out the array the body indices are written to, in no 
+	 * particular order. It must have room for every body.
+	 * @return the number of bodies found.
+	 */
+	public default int query(ArrayList<Body> bodies, float minX, float minY, float maxX, float maxY, int[] out) {
+		int found = 0;
+		for (int i = 0; i < bodies.size(); i++) {
+			Body b = bodies.get(i);
+			if (b.getNumberOfShapes() == 0) continue;
+			if (maxX < b.minX || b.maxX < minX || maxY < b.minY || b.maxY < minY) continue;
+			out[found++] = i;
+		}
+		return found;
+	}
+}
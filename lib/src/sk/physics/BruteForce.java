@@ -0,0 +1,27 @@
+package sk.physics;
+
+import java.util.ArrayList;
+
+/**
+ * The simplest broad phase, it reports every pair of bodies
+ * that may collide without looking at where they are.
+ * <p>
+ * This is slow for large worlds, but since it never misses
+ * a pair it is useful as a reference for the other broad phases.
+ * </p>
+ * 
+ * @author Ed
+ *
+ */
+public class BruteForce implements BroadPhase {
+
+	@Override
+	public void findPairs(ArrayList<Body> bodies, PairBuffer out) {
+		for (int i = 0; i < bodies.size(); i++) {
+			for (int j = 0; j < i; j++) {
+				if (out.check(bodies.get(i), bodies.get(j)))
+					out.add(i, j);
+			}
+		}
+	}
+}
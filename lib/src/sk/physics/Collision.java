@@ -39,6 +39,16 @@ public class Collision {
 	public float normalVelocity = 0;
 	public float tangentVelocity = 0;
 	
+	// How similar the normal has to be to the one in the previous
+	// step for the solver to warm start. 1 means identical.
+	public static float WARM_START_TOLERANCE = 0.95f;
+	
+	// The impulse the world applied before solving, by warm starting
+	float warmImpulse = 0.0f;
+	
+	// If b is standing on a kinematic a, and is carried along by it
+	boolean riding = false;
+	
 	/**
 	 * Default constructor, new collision objects
 	 * shouldn't be created outside of the engines
@@ -70,8 +80,8 @@ public class Collision {
 	 * @param b the second array.
 	 * @return the combined array.
 	 */
-	public static T[] fuseArrays<T>(T[] a, T[] b) {
-		T[] out = new T[a.length + b.length];
+	public static Vector2f[] fuseArrays(Vector2f[] a, Vector2f[] b) {
+		Vector2f[] out = new Vector2f[a.length + b.length];
 		System.arraycopy(a, 0, out, 0, a.length);
 		System.arraycopy(b, 0, out, a.length, b.length);
 		return out;
@@ -155,6 +165,718 @@ public class Collision {
 		return c;
 	}
 	
+	/**
+	 * Does a <em>Separate Axis Theorem</em> test on two shapes, using
+	 * the transformed shapes stored in the bodies. This gives the same
+	 * result as {@link #SATtest(Shape, Transform, Shape, Transform)},
+	 * but only creates garbage when the shapes are overlapping.
+	 * 
+	 * @param a the first body.
+	 * @param shapeA the index of the shape in the first body.
+	 * @param b the second body.
+	 * @param shapeB the index of the shape in the second body.
+	 * @return the collision object with the appropriate 
+	 * data for the collision, returns null if no collision.
+	 */
+	static Collision SATtest(Body a, int shapeA, Body b, int shapeB) {
+		return SATtest(a, shapeA, b, shapeB, null, 0);
+	}
+	
+	/**
+	 * Does a <em>Separate Axis Theorem</em> test on two shapes, starting
+	 * with the axis that separated them last time. When the shapes are
+	 * still apart this usually only needs a single projection.
+	 * 
+	 * @param a the first body.
+	 * @param shapeA the index of the shape in the first body.
+	 * @param b the second body.
+	 * @param shapeB the index of the shape in the second body.
+	 * @param cache the cache that remembers the separating axis, may be null.
+	 * @param slot the slot of the pair in the cache.
+	 * @return the collision object with the appropriate 
+	 * data for the collision, returns null if no collision.
+	 */
+	static Collision SATtest(Body a, int shapeA, Body b, int shapeB, ContactCache cache, int slot) {
+		TransformedShapes ga = a.geometry;
+		TransformedShapes gb = b.geometry;
+		Transform ta = a.getTransform();
+		Transform tb = b.getTransform();
+		
+		Shape sa = a.getShape(shapeA);
+		Shape sb = b.getShape(shapeB);
+		float distanceX = ga.getCenterX(shapeA, sa, ta) - gb.getCenterX(shapeB, sb, tb);
+		float distanceY = ga.getCenterY(shapeA, sa, ta) - gb.getCenterY(shapeB, sb, tb);
+		
+		int pointsA = ga.pointStart[shapeA] * 2;
+		int pointsAEnd = ga.pointStart[shapeA + 1] * 2;
+		int pointsB = gb.pointStart[shapeB] * 2;
+		int pointsBEnd = gb.pointStart[shapeB + 1] * 2;
+		
+		int split = (ga.normalStart[shapeA + 1] - ga.normalStart[shapeA]) * 2;
+		int numAxes = split + (gb.normalStart[shapeB + 1] - gb.normalStart[shapeB]) * 2;
+		
+		float[] normalsA = ga.normals;
+		float[] normalsB = gb.normals;
+		int normalsAStart = ga.normalStart[shapeA] * 2;
+		int normalsBStart = gb.normalStart[shapeB] * 2 - split;
+		
+		// Try the axis that separated them last time first
+		int first = cache == null ? -1 : cache.axes[slot];
+		if (0 <= first && first < numAxes) {
+			float nx = first < split ? normalsA[normalsAStart + first] : normalsB[normalsBStart + first];
+			float ny = first < split ? normalsA[normalsAStart + first + 1] : normalsB[normalsBStart + first + 1];
+			float depth = castDepth(ga.points, pointsA, pointsAEnd, gb.points, pointsB, pointsBEnd,
+					nx, ny, distanceX, distanceY);
+			if (!(0.0f < depth)) return null;
+		}
+		
+		float bestDepth = Float.MAX_VALUE;
+		float bestX = 0.0f;
+		float bestY = 0.0f;
+		boolean ownedByA = false;
+		
+		for (int i = 0; i < numAxes; i += 2) {
+			float nx, ny;
+			if (i < split) {
+				nx = normalsA[normalsAStart + i];
+				ny = normalsA[normalsAStart + i + 1];
+			} else {
+				nx = normalsB[normalsBStart + i];
+				ny = normalsB[normalsBStart + i + 1];
+			}
+			
+			// Check along the current axis
+			float depth = castDepth(ga.points, pointsA, pointsAEnd, gb.points, pointsB, pointsBEnd,
+					nx, ny, distanceX, distanceY);
+			if (!(0.0f < depth)) {
+				if (cache != null) cache.axes[slot] = i;
+				return null;
+			}
+			
+			if (depth < bestDepth) {
+				bestDepth = depth;
+				bestX = nx;
+				bestY = ny;
+				ownedByA = i < split;
+			}
+		}
+		
+		// Only now do we know there is a collision
+		Collision c = new Collision();
+		c.distance = new Vector2f(distanceX, distanceY);
+		c.normal = new Vector2f(bestX, bestY);
+		c.collisionDepth = bestDepth;
+		c.normalOwner = ownedByA ? ta : tb;
+		
+		// The normal should point from A to B
+		float dot = c.normal.dot(c.distance);
+		if (ownedByA ? dot < 0.0f : dot > 0.0f) {
+			c.normal.negate();
+		}
+		return c;
+	}
+
+	/**
+	 * Tests two shapes with whichever test is faster for them. SAT is
+	 * used for most shapes, but pairs with more points than the limit
+	 * are tested with GJK and EPA instead, since SAT gets slow for
+	 * shapes with a lot of points. Circles and capsules have tests of
+	 * their own.
+	 *
+	 * @param a the first body.
+	 * @param shapeA the index of the shape in the first body.
+	 * @param b the second body.
+	 * @param shapeB the index of the shape in the second body.
+	 * @param cache the cache that remembers the separating axis, may be null.
+	 * @param slot the slot of the pair in the cache.
+	 * @param gjkPoints how many points the shapes can have together
+	 * before GJK is used.
+	 * @param scratch the memory GJK works in.
+	 * @return the collision object with the appropriate
+	 * data for the collision, returns null if no collision.
+	 */
+	static Collision test(Body a, int shapeA, Body b, int shapeB,
+			ContactCache cache, int slot, int gjkPoints, GJK.Scratch scratch) {
+		TransformedShapes ga = a.geometry;
+		TransformedShapes gb = b.geometry;
+		if (usesSAT(ga, shapeA, gb, shapeB, gjkPoints)) {
+			return SATtest(a, shapeA, b, shapeB, cache, slot);
+		}
+		if (0.0f < ga.rounding[shapeA] || 0.0f < gb.rounding[shapeB]) {
+			return roundTest(a, shapeA, b, shapeB);
+		}
+		return GJK.test(a, shapeA, b, shapeB, scratch);
+	}
+	
+	/**
+	 * Checks if {@link #test(Body, int, Body, int, ContactCache, int, int, GJK.Scratch)}
+	 * tests the two shapes with SAT.
+	 *
+	 * @param ga the geometry of the first shape.
+	 * @param shapeA the index of the first shape.
+	 * @param gb the geometry of the second shape.
+	 * @param shapeB the index of the second shape.
+	 * @param gjkPoints how many points the shapes can have together
+	 * before GJK is used.
+	 * @return true if neither shape is round and they don't have too many points.
+	 */
+	static boolean usesSAT(TransformedShapes ga, int shapeA, TransformedShapes gb, int shapeB, int gjkPoints) {
+		if (0.0f < ga.rounding[shapeA] || 0.0f < gb.rounding[shapeB]) return false;
+		int points = ga.pointStart[shapeA + 1] - ga.pointStart[shapeA] +
+				gb.pointStart[shapeB + 1] - gb.pointStart[shapeB];
+		return points <= gjkPoints;
+	}
+
+	/**
+	 * Tests two shapes where at least one is a circle or a capsule.
+	 * The result is the same as SAT would give for a polygon with
+	 * a lot of points, but only a handful of distances are needed.
+	 * 
+	 * @param a the first body.
+	 * @param shapeA the index of the shape in the first body.
+	 * @param b the second body.
+	 * @param shapeB the index of the shape in the second body.
+	 * @return the collision object with the appropriate 
+	 * data for the collision, returns null if no collision.
+	 */
+	static Collision roundTest(Body a, int shapeA, Body b, int shapeB) {
+		TransformedShapes ga = a.geometry;
+		TransformedShapes gb = b.geometry;
+		Transform tb = b.getTransform();
+		
+		Shape sa = a.getShape(shapeA);
+		Shape sb = b.getShape(shapeB);
+		float distanceX = ga.getCenterX(shapeA, sa, a.getTransform()) - gb.getCenterX(shapeB, sb, tb);
+		float distanceY = ga.getCenterY(shapeA, sa, a.getTransform()) - gb.getCenterY(shapeB, sb, tb);
+		
+		Vector2f normal = new Vector2f();
+		float depth = roundDepth(ga, shapeA, gb, shapeB, distanceX, distanceY, normal);
+		if (!(0.0f < depth)) return null;
+		
+		Collision c = new Collision();
+		c.distance = new Vector2f(distanceX, distanceY);
+		// The normal points from A to B, which is towards the owner
+		c.normal = normal;
+		c.collisionDepth = depth;
+		c.normalOwner = tb;
+		return c;
+	}
+	
+	/**
+	 * Finds how deep two shapes overlap when at least one of them is a
+	 * circle or a capsule. Those are a point or a line grown by their
+	 * radius, so while the points and lines of the shapes are apart the
+	 * depth is the sum of the radii minus the distance between them. 
+	 * When they overlap, the shapes are projected onto the normals
+	 * like SAT does, with the radii added.
+	 * 
+	 * @param distanceX the x coordinate of the center of A minus the center of B.
+	 * @param distanceY the y coordinate of the center of A minus the center of B.
+	 * @param normal where the normal, pointing from A to B, is written. May be null.
+	 * @return the depth, 0 or less if the shapes don't overlap.
+	 */
+	private static float roundDepth(TransformedShapes ga, int shapeA, TransformedShapes gb, int shapeB,
+			float distanceX, float distanceY, Vector2f normal) {
+		float radius = ga.rounding[shapeA] + gb.rounding[shapeB];
+		
+		int pointsA = ga.pointStart[shapeA] * 2;
+		int pointsAEnd = ga.pointStart[shapeA + 1] * 2;
+		int pointsB = gb.pointStart[shapeB] * 2;
+		int pointsBEnd = gb.pointStart[shapeB + 1] * 2;
+		
+		int split = (ga.normalStart[shapeA + 1] - ga.normalStart[shapeA]) * 2;
+		int numAxes = split + (gb.normalStart[shapeB + 1] - gb.normalStart[shapeB]) * 2;
+		int normalsAStart = ga.normalStart[shapeA] * 2;
+		int normalsBStart = gb.normalStart[shapeB] * 2 - split;
+		
+		// The normals usually tell that the shapes are apart right away,
+		// and if the points and lines overlap on all of them, so do the shapes
+		float bestDepth = Float.MAX_VALUE;
+		float bestX = 0.0f;
+		float bestY = 0.0f;
+		boolean inside = true;
+		for (int i = 0; i < numAxes; i += 2) {
+			float nx, ny;
+			if (i < split) {
+				nx = ga.normals[normalsAStart + i];
+				ny = ga.normals[normalsAStart + i + 1];
+			} else {
+				nx = gb.normals[normalsBStart + i];
+				ny = gb.normals[normalsBStart + i + 1];
+			}
+			
+			float depth = castDepth(ga.points, pointsA, pointsAEnd, gb.points, pointsB, pointsBEnd,
+					nx, ny, distanceX, distanceY);
+			if (!(0.0f < depth + radius)) return depth + radius;
+			if (!(0.0f < depth)) inside = false;
+			if (depth < bestDepth) {
+				bestDepth = depth;
+				bestX = nx;
+				bestY = ny;
+			}
+		}
+		
+		// A line and a point, or two lines, don't have enough normals to tell
+		boolean polygon = 4 < pointsAEnd - pointsA || 4 < pointsBEnd - pointsB;
+		if (!inside || !polygon) {
+			// The closest pair is a point of one shape and an edge of the other
+			float closest = Float.MAX_VALUE;
+			float fromX = 0.0f, fromY = 0.0f, toX = 0.0f, toY = 0.0f;
+			for (int pass = 0; pass < 2; pass++) {
+				TransformedShapes gp = pass == 0 ? ga : gb;
+				TransformedShapes ge = pass == 0 ? gb : ga;
+				int from = pass == 0 ? pointsA : pointsB;
+				int to = pass == 0 ? pointsAEnd : pointsBEnd;
+				int edgeFrom = pass == 0 ? pointsB : pointsA;
+				int edgeTo = pass == 0 ? pointsBEnd : pointsAEnd;
+				// Everything is relative to the center of B
+				float px = pass == 0 ? distanceX : 0.0f;
+				float py = pass == 0 ? distanceY : 0.0f;
+				float ex = pass == 0 ? 0.0f : distanceX;
+				float ey = pass == 0 ? 0.0f : distanceY;
+				
+				// A line only has one edge, a point none but itself
+				int edgeLast = edgeTo - edgeFrom <= 4 ? edgeFrom + 2 : edgeTo;
+				for (int i = from; i < to; i += 2) {
+					float x = gp.points[i] + px;
+					float y = gp.points[i + 1] + py;
+					for (int j = edgeFrom; j < edgeLast; j += 2) {
+						int k = j + 2 < edgeTo ? j + 2 : edgeFrom;
+						float x0 = ge.points[j] + ex;
+						float y0 = ge.points[j + 1] + ey;
+						float x1 = ge.points[k] + ex;
+						float y1 = ge.points[k + 1] + ey;
+						float t = closestOnLine(x, y, x0, y0, x1, y1);
+						float cx = x0 + (x1 - x0) * t;
+						float cy = y0 + (y1 - y0) * t;
+						float d = (x - cx) * (x - cx) + (y - cy) * (y - cy);
+						if (d < closest) {
+							closest = d;
+							fromX = pass == 0 ? x : cx;
+							fromY = pass == 0 ? y : cy;
+							toX = pass == 0 ? cx : x;
+							toY = pass == 0 ? cy : y;
+						}
+					}
+				}
+			}
+			
+			if (!polygon && crosses(ga.points, pointsA, pointsAEnd, distanceX, distanceY,
+					gb.points, pointsB, pointsBEnd)) {
+				closest = 0.0f;
+			}
+			
+			if (0.0f < closest) {
+				float length = (float) Math.sqrt(closest);
+				if (normal != null) {
+					normal.set((toX - fromX) / length, (toY - fromY) / length);
+				}
+				return radius - length;
+			}
+		}
+		
+		// The points and lines overlap, push them apart along the best normal
+		if (bestDepth == Float.MAX_VALUE) {
+			// Two circles on top of each other, any direction is as good
+			if (normal != null) normal.set(0.0f, 1.0f);
+			return radius;
+		}
+		if (normal != null) {
+			float dot = bestX * distanceX + bestY * distanceY;
+			normal.set(dot < 0.0f ? bestX : -bestX, dot < 0.0f ? bestY : -bestY);
+		}
+		return bestDepth + radius;
+	}
+	
+	/**
+	 * Returns how far along the line from the first point to the second
+	 * the point closest to p is, 0 at the first point and 1 at the second.
+	 */
+	private static float closestOnLine(float px, float py, float x0, float y0, float x1, float y1) {
+		float ex = x1 - x0;
+		float ey = y1 - y0;
+		float length = ex * ex + ey * ey;
+		if (length == 0.0f) return 0.0f;
+		float t = ((px - x0) * ex + (py - y0) * ey) / length;
+		return Math.max(0.0f, Math.min(1.0f, t));
+	}
+	
+	/**
+	 * Checks if the lines of two capsules cross each other. A is offset
+	 * by the distance, and shapes with a single point never cross.
+	 */
+	private static boolean crosses(float[] pa, int fromA, int toA, float distanceX, float distanceY,
+			float[] pb, int fromB, int toB) {
+		if (toA - fromA != 4 || toB - fromB != 4) return false;
+		float ax0 = pa[fromA] + distanceX;
+		float ay0 = pa[fromA + 1] + distanceY;
+		float ax1 = pa[fromA + 2] + distanceX;
+		float ay1 = pa[fromA + 3] + distanceY;
+		float bx0 = pb[fromB];
+		float by0 = pb[fromB + 1];
+		float bx1 = pb[fromB + 2];
+		float by1 = pb[fromB + 3];
+		
+		// The ends of each line have to be on different sides of the other
+		float b0 = (ax1 - ax0) * (by0 - ay0) - (ay1 - ay0) * (bx0 - ax0);
+		float b1 = (ax1 - ax0) * (by1 - ay0) - (ay1 - ay0) * (bx1 - ax0);
+		float a0 = (bx1 - bx0) * (ay0 - by0) - (by1 - by0) * (ax0 - bx0);
+		float a1 = (bx1 - bx0) * (ay1 - by0) - (by1 - by0) * (ax1 - bx0);
+		return b0 * b1 < 0.0f && a0 * a1 < 0.0f;
+	}
+	
+	/**
+	 * Sweeps a shape of the first body along its motion during the
+	 * latest step and finds when it first touches the shape of the
+	 * second body, which also moves. Both shapes are placed at the
+	 * start of the motion using the geometry from the end of it,
+	 * which is exact since bodies never rotate during a step.
+	 * 
+	 * @param a the first body.
+	 * @param shapeA the index of the shape in the first body.
+	 * @param dax how far the first body moved along the x axis.
+	 * @param day how far the first body moved along the y axis.
+	 * @param b the second body.
+	 * @param shapeB the index of the shape in the second body.
+	 * @param dbx how far the second body moved along the x axis.
+	 * @param dby how far the second body moved along the y axis.
+	 * @return the fraction of the motion where the shapes first touch,
+	 * or 1 if they don't touch during it, or were already touching.
+	 */
+	static float sweepTest(Body a, int shapeA, float dax, float day, 
+			Body b, int shapeB, float dbx, float dby) {
+		TransformedShapes ga = a.geometry;
+		TransformedShapes gb = b.geometry;
+		Transform ta = a.getTransform();
+		Transform tb = b.getTransform();
+		
+		Shape sa = a.getShape(shapeA);
+		Shape sb = b.getShape(shapeB);
+		float ax = ga.getCenterX(shapeA, sa, ta) - dax;
+		float ay = ga.getCenterY(shapeA, sa, ta) - day;
+		float bx = gb.getCenterX(shapeB, sb, tb) - dbx;
+		float by = gb.getCenterY(shapeB, sb, tb) - dby;
+		
+		// The motion of A as seen from B
+		float dx = dax - dbx;
+		float dy = day - dby;
+		
+		int pointsA = ga.pointStart[shapeA] * 2;
+		int pointsAEnd = ga.pointStart[shapeA + 1] * 2;
+		int pointsB = gb.pointStart[shapeB] * 2;
+		int pointsBEnd = gb.pointStart[shapeB + 1] * 2;
+		
+		int split = (ga.normalStart[shapeA + 1] - ga.normalStart[shapeA]) * 2;
+		int numAxes = split + (gb.normalStart[shapeB + 1] - gb.normalStart[shapeB]) * 2;
+		
+		float[] normalsA = ga.normals;
+		float[] normalsB = gb.normals;
+		int normalsAStart = ga.normalStart[shapeA] * 2;
+		int normalsBStart = gb.normalStart[shapeB] * 2 - split;
+		
+		// The shapes touch when they overlap on every axis at once
+		float enter = -Float.MAX_VALUE;
+		float exit = Float.MAX_VALUE;
+		for (int i = 0; i < numAxes; i += 2) {
+			float nx, ny;
+			if (i < split) {
+				nx = normalsA[normalsAStart + i];
+				ny = normalsA[normalsAStart + i + 1];
+			} else {
+				nx = normalsB[normalsBStart + i];
+				ny = normalsB[normalsBStart + i + 1];
+			}
+			
+			float centerA = nx * ax + ny * ay;
+			float minA = centerA + castMin(ga.points, pointsA, pointsAEnd, nx, ny) - ga.rounding[shapeA];
+			float maxA = centerA + castMax(ga.points, pointsA, pointsAEnd, nx, ny) + ga.rounding[shapeA];
+			float centerB = nx * bx + ny * by;
+			float minB = centerB + castMin(gb.points, pointsB, pointsBEnd, nx, ny) - gb.rounding[shapeB];
+			float maxB = centerB + castMax(gb.points, pointsB, pointsBEnd, nx, ny) + gb.rounding[shapeB];
+			float v = nx * dx + ny * dy;
+			
+			if (maxA <= minB) {
+				// A is below B along the axis, it has to move up
+				if (v <= 0.0f) return 1.0f;
+				enter = Math.max(enter, (minB - maxA) / v);
+				exit = Math.min(exit, (maxB - minA) / v);
+			} else if (maxB <= minA) {
+				// A is above B along the axis, it has to move down
+				if (0.0f <= v) return 1.0f;
+				enter = Math.max(enter, (maxB - minA) / v);
+				exit = Math.min(exit, (minB - maxA) / v);
+			} else if (0.0f < v) {
+				exit = Math.min(exit, (maxB - minA) / v);
+			} else if (v < 0.0f) {
+				exit = Math.min(exit, (minB - maxA) / v);
+			}
+			
+			if (exit < enter) return 1.0f;
+		}
+		
+		if (enter <= 0.0f || 1.0f <= enter) return 1.0f;
+		return enter;
+	}
+	
+	/**
+	 * Checks if two transformed shapes overlap, without finding
+	 * out how or creating any garbage.
+	 * 
+	 * @param ga the geometry of the first shape.
+	 * @param shapeA the index of the first shape in its geometry.
+	 * @param ax the x coordinate of the center of the first shape.
+	 * @param ay the y coordinate of the center of the first shape.
+	 * @param gb the geometry of the second shape.
+	 * @param shapeB the index of the second shape in its geometry.
+	 * @param bx the x coordinate of the center of the second shape.
+	 * @param by the y coordinate of the center of the second shape.
+	 * @return true if the shapes overlap.
+	 */
+	static boolean overlaps(TransformedShapes ga, int shapeA, float ax, float ay,
+			TransformedShapes gb, int shapeB, float bx, float by) {
+		float distanceX = ax - bx;
+		float distanceY = ay - by;
+		if (0.0f < ga.rounding[shapeA] || 0.0f < gb.rounding[shapeB]) {
+			return 0.0f < roundDepth(ga, shapeA, gb, shapeB, distanceX, distanceY, null);
+		}
+		
+		int pointsA = ga.pointStart[shapeA] * 2;
+		int pointsAEnd = ga.pointStart[shapeA + 1] * 2;
+		int pointsB = gb.pointStart[shapeB] * 2;
+		int pointsBEnd = gb.pointStart[shapeB + 1] * 2;
+		
+		for (int i = ga.normalStart[shapeA] * 2; i < ga.normalStart[shapeA + 1] * 2; i += 2) {
+			if (!(0.0f < castDepth(ga.points, pointsA, pointsAEnd, gb.points, pointsB, pointsBEnd,
+					ga.normals[i], ga.normals[i + 1], distanceX, distanceY))) return false;
+		}
+		for (int i = gb.normalStart[shapeB] * 2; i < gb.normalStart[shapeB + 1] * 2; i += 2) {
+			if (!(0.0f < castDepth(ga.points, pointsA, pointsAEnd, gb.points, pointsB, pointsBEnd,
+					gb.normals[i], gb.normals[i + 1], distanceX, distanceY))) return false;
+		}
+		return true;
+	}
+	
+	/**
+	 * Finds where a ray enters a transformed shape. The shape is the
+	 * space between its edges along every axis, so the ray is clipped
+	 * against each of those slabs in turn.
+	 * <p>
+	 * A ray starting inside the shape hits it right away, with
+	 * the normal pointing back along the ray.
+	 * </p>
+	 * 
+	 * @param g the geometry of the shape.
+	 * @param shape the index of the shape in the geometry.
+	 * @param cx the x coordinate of the center of the shape.
+	 * @param cy the y coordinate of the center of the shape.
+	 * @param ox the x coordinate of the start of the ray.
+	 * @param oy the y coordinate of the start of the ray.
+	 * @param dx the x component of the ray, from start to end.
+	 * @param dy the y component of the ray, from start to end.
+	 * @param normal where the normal of the hit edge is written.
+	 * @return the fraction of the ray where it enters the shape, or a
+	 * value larger than 1 if it misses.
+	 */
+	static float raycast(TransformedShapes g, int shape, float cx, float cy,
+			float ox, float oy, float dx, float dy, Vector2f normal) {
+		if (0.0f < g.rounding[shape]) {
+			return raycastRound(g, shape, cx, cy, ox, oy, dx, dy, normal);
+		}
+		
+		int points = g.pointStart[shape] * 2;
+		int pointsEnd = g.pointStart[shape + 1] * 2;
+		
+		float enter = -Float.MAX_VALUE;
+		float exit = Float.MAX_VALUE;
+		float enterX = 0.0f;
+		float enterY = 0.0f;
+		for (int i = g.normalStart[shape] * 2; i < g.normalStart[shape + 1] * 2; i += 2) {
+			float nx = g.normals[i];
+			float ny = g.normals[i + 1];
+			float min = castMin(g.points, points, pointsEnd, nx, ny);
+			float max = castMax(g.points, points, pointsEnd, nx, ny);
+			float start = nx * (ox - cx) + ny * (oy - cy);
+			float v = nx * dx + ny * dy;
+			
+			if (v == 0.0f) {
+				// Parallel to the slab, it has to start inside it
+				if (start < min || max < start) return Float.MAX_VALUE;
+				continue;
+			}
+			
+			float t0 = (min - start) / v;
+			float t1 = (max - start) / v;
+			if (t1 < t0) {
+				float tmp = t0;
+				t0 = t1;
+				t1 = tmp;
+			}
+			if (enter < t0) {
+				enter = t0;
+				// Entering through the edge facing the ray
+				enterX = 0.0f < v ? -nx : nx;
+				enterY = 0.0f < v ? -ny : ny;
+			}
+			exit = Math.min(exit, t1);
+			if (exit < enter) return Float.MAX_VALUE;
+		}
+		
+		if (exit < 0.0f || 1.0f < enter) return Float.MAX_VALUE;
+		if (enter < 0.0f) {
+			float length = (float) Math.sqrt(dx * dx + dy * dy);
+			normal.set(-dx / length, -dy / length);
+			return 0.0f;
+		}
+		normal.set(enterX, enterY);
+		return enter;
+	}
+	
+	/**
+	 * Finds where a ray enters a circle or a capsule. The ends are
+	 * circles, and the sides of a capsule are its line moved out by
+	 * the radius along the normal.
+	 * 
+	 * @return the fraction of the ray where it enters the shape, or a
+	 * value larger than 1 if it misses.
+	 */
+	private static float raycastRound(TransformedShapes g, int shape, float cx, float cy,
+			float ox, float oy, float dx, float dy, Vector2f normal) {
+		float radius = g.rounding[shape];
+		int points = g.pointStart[shape] * 2;
+		int pointsEnd = g.pointStart[shape + 1] * 2;
+		float sx = ox - cx;
+		float sy = oy - cy;
+		float x0 = g.points[points];
+		float y0 = g.points[points + 1];
+		float x1 = g.points[pointsEnd - 2];
+		float y1 = g.points[pointsEnd - 1];
+		
+		float t = closestOnLine(sx, sy, x0, y0, x1, y1);
+		float ix = sx - (x0 + (x1 - x0) * t);
+		float iy = sy - (y0 + (y1 - y0) * t);
+		if (ix * ix + iy * iy < radius * radius) {
+			float length = (float) Math.sqrt(dx * dx + dy * dy);
+			normal.set(-dx / length, -dy / length);
+			return 0.0f;
+		}
+		
+		float enter = Float.MAX_VALUE;
+		float a = dx * dx + dy * dy;
+		for (int i = points; i < pointsEnd; i += 2) {
+			float px = sx - g.points[i];
+			float py = sy - g.points[i + 1];
+			float b = px * dx + py * dy;
+			float discriminant = b * b - a * (px * px + py * py - radius * radius);
+			if (discriminant < 0.0f) continue;
+			
+			float hit = (-b - (float) Math.sqrt(discriminant)) / a;
+			if (0.0f <= hit && hit < enter) {
+				enter = hit;
+				normal.set((px + dx * hit) / radius, (py + dy * hit) / radius);
+			}
+		}
+		
+		if (pointsEnd - points == 4) {
+			float nx = g.normals[g.normalStart[shape] * 2];
+			float ny = g.normals[g.normalStart[shape] * 2 + 1];
+			float v = nx * dx + ny * dy;
+			float ex = x1 - x0;
+			float ey = y1 - y0;
+			float length = ex * ex + ey * ey;
+			for (float side = -1.0f; side <= 1.0f; side += 2.0f) {
+				// Only the side facing the ray can be entered
+				if (0.0f <= side * v) continue;
+				float hit = (nx * x0 + ny * y0 + side * radius - nx * sx - ny * sy) / v;
+				if (hit < 0.0f || enter <= hit) continue;
+				
+				float along = (sx + dx * hit - x0) * ex + (sy + dy * hit - y0) * ey;
+				if (along < 0.0f || length < along) continue;
+				enter = hit;
+				normal.set(side * nx, side * ny);
+			}
+		}
+		return enter;
+	}
+	
+	/**
+	 * Casts both shapes along the axis and returns how much they
+	 * overlap, a value of 0 or less means the axis separates them.
+	 */
+	private static float castDepth(float[] pa, int fromA, int toA, float[] pb, int fromB, int toB,
+			float nx, float ny, float distanceX, float distanceY) {
+		float dot = nx * distanceX + ny * distanceY;
+		
+		// Cast along the normal
+		float max, min;
+		if (dot < 0.0f) {
+			max = castMax(pa, fromA, toA, nx, ny);
+			min = -castMin(pb, fromB, toB, nx, ny);
+		} else {
+			max = castMax(pb, fromB, toB, nx, ny);
+			min = -castMin(pa, fromA, toA, nx, ny);
+		}
+		
+		return (max + min) - Math.abs(dot);
+	}
+	
+	/**
+	 * Projects the points onto the axis and returns the largest value,
+	 * but never less than 0 since the points surround their center.
+	 */
+	private static float castMax(float[] points, int from, int to, float x, float y) {
+		float max = 0.0f;
+		for (int i = from; i < to; i += 2) {
+			max = Math.max(max, points[i] * x + points[i + 1] * y);
+		}
+		return max;
+	}
+	
+	/**
+	 * Projects the points onto the axis and returns the smallest value,
+	 * but never more than 0 since the points surround their center.
+	 */
+	private static float castMin(float[] points, int from, int to, float x, float y) {
+		float min = 0.0f;
+		for (int i = from; i < to; i += 2) {
+			min = Math.min(min, points[i] * x + points[i + 1] * y);
+		}
+		return min;
+	}
+	
+	/**
+	 * Applies an impulse along the normal to two bodies, the same
+	 * way the solver does. The normal should point from body a 
+	 * to body b, and b has to be dynamic.
+	 * 
+	 * @param a the first body, may be static.
+	 * @param b the second body.
+	 * @param normal the normal pointing from the first body.
+	 * @param impulse the impulse to apply.
+	 */
+	static void applyImpulse(Body a, Body b, Vector2f normal, float impulse) {
+		if (a.isDynamic()) {
+			Vector2f bounceForce = normal.clone().scale(impulse);
+			b.addForce(bounceForce.scale(a.getMass()));
+			a.addForce(bounceForce.scale(-a.getInvertedMass() * b.getMass()));
+		} else {
+			Vector2f bounceForce = normal.clone().scale(impulse);
+			b.addForce(bounceForce);
+		}
+	}
+	
+	/**
+	 * Returns the dot product between the normal, as it will be
+	 * oriented when solving, and the specified vector.
+	 * 
+	 * @param x the x component of the vector.
+	 * @param y the y component of the vector.
+	 * @return the dot product.
+	 */
+	float dotSolveNormal(float x, float y) {
+		float dot = normal.x * x + normal.y * y;
+		return a.getTransform() == normalOwner ? -dot : dot;
+	}
+	
 	/**
 	 * Solves the contained collision.
 	 * <p>
@@ -182,36 +904,47 @@ public class Collision {
 		}
 		b.getTransform().position.add(reverse);
 		
+		// The world may already have applied some of the impulse
+		float warm = warmImpulse;
+		
 		// Change the velocity
 		Vector2f relativeVelocity = new Vector2f();
-		Vector2f.sub(a.getNextVelocity(), b.getNextVelocity(), relativeVelocity);
+		if (riding) {
+			// The world carries riders along, so only their own velocity counts
+			relativeVelocity.set(b.getNextVelocity());
+			relativeVelocity.negate();
+		} else {
+			Vector2f.sub(a.getNextVelocity(), b.getNextVelocity(), relativeVelocity);
+		}
 		
 		normalVelocity = Vector2f.dot(relativeVelocity, normal);
 		
 		// Make sure we're not moving away, if we are, just return
-		if (0.0f > normalVelocity) return;
+		if (warm == 0.0f && 0.0f > normalVelocity) return;
 		
 		// Bounce
 		float bounce = Math.min(a.getBounce(), b.getBounce());
-		float bounceImpulse = normalVelocity * (bounce + 1.0f);
+		float bounceImpulse = normalVelocity * (0.0f > normalVelocity ? 1.0f : bounce + 1.0f);
 		if (dynamicCollision) {
 			bounceImpulse /= a.getInvertedMass() + b.getInvertedMass();
-			Vector2f bounceForce = normal.clone().scale(bounceImpulse);
-			b.addForce(bounceForce.scale(a.getMass()));
-			a.addForce(bounceForce.scale(-a.getInvertedMass() * b.getMass()));
 		} else {
 			bounceImpulse *= b.getMass();
-			Vector2f bounceForce = normal.clone().scale(bounceImpulse);
-			b.addForce(bounceForce);
 		}
 		
+		// The warm start may have pushed too hard, take some back,
+		// but never so much that the bodies are pulled together
+		if (warm != 0.0f) {
+			bounceImpulse = Math.max(-warm, bounceImpulse);
+		}
+		applyImpulse(a, b, normal, bounceImpulse);
+		
 		// Store it for future use.
-		impactForce = bounceImpulse;
+		impactForce = warm + bounceImpulse;
 		
 		// Friction
 		float mu = Math.min(a.getFriction(), b.getFriction());
 		if (mu == 0.0f) return;
-		float frictionImpulse = (float) Math.abs(bounceImpulse * mu * delta);
+		float frictionImpulse = (float) Math.abs(impactForce * mu * delta);
 		float totalMass = dynamicCollision ? a.getMass() + b.getMass() : b.getMass();
 		// Super fast manual rotation and creation
 		Vector2f tangent = new Vector2f(normal.y, -normal.x);
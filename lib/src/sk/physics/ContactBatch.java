@@ -0,0 +1,209 @@
+package sk.physics;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * The pairs of shapes that made it through the broad phase checks,
+ * collected so they can all be tested before anything is solved.
+ * <p>
+ * The tests only read the bodies, so they can run on several threads.
+ * Each task owns a range of the batch and writes its results to that
+ * range, so reading the results from start to end gives them in the
+ * order the pairs were added, no matter which thread tested what.
+ * </p>
+ *
+ * @author Ed
+ *
+ */
+class ContactBatch {
+
+	// Ranges smaller than this are not split further
+	static final int MIN_TASK_SIZE = 32;
+
+	private Body[] bodiesA = new Body[64];
+	private Body[] bodiesB = new Body[64];
+	private int[] shapesA = new int[64];
+	private int[] shapesB = new int[64];
+	private int[] slots = new int[64];
+	private Collision[] collisions = new Collision[64];
+	private int size = 0;
+
+	// The memory GJK works in on each thread of the pool
+	private final ThreadLocal<GJK.Scratch> scratches = new ThreadLocal<GJK.Scratch>() {
+		@Override
+		protected GJK.Scratch initialValue() {
+			return new GJK.Scratch();
+		}
+	};
+
+	/**
+	 * Removes all pairs from the batch, keeping the memory.
+	 */
+	void clear() {
+		Arrays.fill(bodiesA, 0, size, null);
+		Arrays.fill(bodiesB, 0, size, null);
+		Arrays.fill(collisions, 0, size, null);
+		size = 0;
+	}
+
+	/**
+	 * Adds a pair of shapes to test.
+	 *
+	 * @param a the first body.
+	 * @param shapeA the index of the shape in the first body.
+	 * @param b the second body.
+	 * @param shapeB the index of the shape in the second body.
+	 */
+	void add(Body a, int shapeA, Body b, int shapeB) {
+		if (size == slots.length) {
+			int capacity = size * 2;
+			bodiesA = Arrays.copyOf(bodiesA, capacity);
+			bodiesB = Arrays.copyOf(bodiesB, capacity);
+			shapesA = Arrays.copyOf(shapesA, capacity);
+			shapesB = Arrays.copyOf(shapesB, capacity);
+			slots = Arrays.copyOf(slots, capacity);
+			collisions = Arrays.copyOf(collisions, capacity);
+		}
+		bodiesA[size] = a;
+		bodiesB[size] = b;
+		shapesA[size] = shapeA;
+		shapesB[size] = shapeB;
+		slots[size] = -1;
+		size++;
+	}
+
+	/**
+	 * Finds the slots of all the pairs in the cache. Room is made for
+	 * every pair first, so the cache can't move its entries while the
+	 * slots are in use.
+	 *
+	 * @param cache the contact cache.
+	 */
+	void findSlots(ContactCache cache) {
+		cache.reserve(size);
+		for (int i = 0; i < size; i++) {
+			slots[i] = cache.find(bodiesA[i], shapesA[i], bodiesB[i], shapesB[i]);
+		}
+	}
+
+	/**
+	 * Tests all the pairs in the batch. Every pair has its own slot
+	 * in the cache, so the tests never write to the same place.
+	 *
+	 * @param cache the cache with the separating axes.
+	 * @param parallel if the tests should be spread over the common pool.
+	 * @param gjkPoints how many points a pair of shapes can have together
+	 * before GJK is used instead of SAT.
+	 * @param scratch the memory GJK works in when the tests aren't spread
+	 * over the pool, the threads of the pool have their own.
+	 */
+	void test(ContactCache cache, boolean parallel, int gjkPoints, GJK.Scratch scratch) {
+		if (parallel && MIN_TASK_SIZE < size) {
+			ForkJoinPool.commonPool().invoke(new Task(cache, 0, size, gjkPoints));
+		} else {
+			test(cache, 0, size, gjkPoints, scratch);
+		}
+	}
+
+	/**
+	 * Tests the pairs in the range.
+	 */
+	private void test(ContactCache cache, int from, int to, int gjkPoints, GJK.Scratch scratch) {
+		for (int i = from; i < to; i++) {
+			collisions[i] = Collision.test(bodiesA[i], shapesA[i], bodiesB[i], shapesB[i],
+					cache, slots[i], gjkPoints, scratch);
+		}
+	}
+
+	/**
+	 * Returns the number of pairs in the batch.
+	 *
+	 * @return the number of pairs.
+	 */
+	int size() {
+		return size;
+	}
+
+	/**
+	 * Returns the first body of a pair.
+	 *
+	 * @param i the index of the pair.
+	 * @return the first body.
+	 */
+	Body getA(int i) {
+		return bodiesA[i];
+	}
+
+	/**
+	 * Returns the second body of a pair.
+	 *
+	 * @param i the index of the pair.
+	 * @return the second body.
+	 */
+	Body getB(int i) {
+		return bodiesB[i];
+	}
+
+	/**
+	 * Returns the slot of a pair in the contact cache.
+	 *
+	 * @param i the index of the pair.
+	 * @return the slot of the pair.
+	 */
+	int getSlot(int i) {
+		return slots[i];
+	}
+
+	/**
+	 * Checks if a pair is tested with SAT.
+	 *
+	 * @param i the index of the pair.
+	 * @param gjkPoints how many points a pair of shapes can have together
+	 * before GJK is used instead of SAT.
+	 * @return true if the pair is tested with SAT.
+	 */
+	boolean usesSAT(int i, int gjkPoints) {
+		return Collision.usesSAT(bodiesA[i].geometry, shapesA[i], bodiesB[i].geometry, shapesB[i], gjkPoints);
+	}
+
+	/**
+	 * Returns the result of testing a pair.
+	 *
+	 * @param i the index of the pair.
+	 * @return the collision, or null if the shapes weren't touching.
+	 */
+	Collision getCollision(int i) {
+		return collisions[i];
+	}
+
+	/**
+	 * Splits the range in half until it is small enough to test.
+	 */
+	@SuppressWarnings("serial")
+	private class Task extends RecursiveAction {
+
+		private final ContactCache cache;
+		private final int from;
+		private final int to;
+		private final int gjkPoints;
+
+		Task(ContactCache cache, int from, int to, int gjkPoints) {
+			this.cache = cache;
+			this.from = from;
+			this.to = to;
+			this.gjkPoints = gjkPoints;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from <= MIN_TASK_SIZE) {
+				test(cache, from, to, gjkPoints, scratches.get());
+				return;
+			}
+			int mid = (from + to) >>> 1;
+			invokeAll(new Task(cache, from, mid, gjkPoints), new Task(cache, mid, to, gjkPoints));
+		}
+	}
+}
@@ -0,0 +1,393 @@
+package sk.physics;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import sk.util.vector.Vector2f;
+
+/**
+ * Remembers information about pairs of shapes between steps,
+ * so the world doesn't have to start from scratch every step.
+ * <p>
+ * For each pair of shapes it stores the axis that separated them
+ * the last time they were apart, which is very likely to still
+ * separate them. It also stores the normal and impulse of the
+ * last contact, which lets the solver warm start.
+ * </p>
+ * <p>
+ * Entries that weren't used during the previous step are
+ * considered forgotten and are thrown away when space is needed.
+ * </p>
+ *
+ * @author Ed
+ *
+ */
+class ContactCache {
+
+	// The number of bytes an entry takes in a snapshot
+	static final int SNAPSHOT_ENTRY_BYTES = 4 + 8 + 8 + 4 + 4 + 4 + 4 + 4 + 4 + 4;
+
+	// The keys, (body id << 32) | shape index, a stamp of 0 means empty
+	private long[] keysA = new long[64];
+	private long[] keysB = new long[64];
+	private int[] stamps = new int[64];
+	private int size = 0;
+	private int step = 1;
+
+	// The data for each entry
+	int[] axes = new int[64];
+	float[] normalX = new float[64];
+	float[] normalY = new float[64];
+	float[] impulses = new float[64];
+	
+	// The bodies as they were ordered when solving, and how much
+	// of the impulse has been applied by warm starting this step
+	private Body[] bodiesA = new Body[64];
+	private Body[] bodiesB = new Body[64];
+	private float[] applied = new float[64];
+	
+	private Vector2f normal = new Vector2f();
+
+	/**
+	 * Moves the cache on to the next step. Entries that aren't
+	 * found during the new step will be forgotten after it.
+	 */
+	void nextStep() {
+		step++;
+	}
+
+	/**
+	 * Finds the entry for the pair of shapes, or creates a new one.
+	 * New entries, and entries that weren't used in the previous
+	 * step, have no separating axis and no impulse.
+	 *
+	 * @param a the first body.
+	 * @param shapeA the index of the shape in the first body.
+	 * @param b the second body.
+	 * @param shapeB the index of the shape in the second body.
+	 * @return the slot of the entry.
+	 */
+	int find(Body a, int shapeA, Body b, int shapeB) {
+		long keyA = ((long) a.getId() << 32) | shapeA;
+		long keyB = ((long) b.getId() << 32) | shapeB;
+
+		int mask = stamps.length - 1;
+		int slot = hash(keyA, keyB) & mask;
+		while (stamps[slot] != 0) {
+			if (keysA[slot] == keyA && keysB[slot] == keyB) {
+				if (stamps[slot] < step - 1) {
+					reset(slot);
+				}
+				stamps[slot] = step;
+				return slot;
+			}
+			slot = (slot + 1) & mask;
+		}
+
+		if (stamps.length < (size + 1) * 2) {
+			rehash(1);
+			return find(a, shapeA, b, shapeB);
+		}
+
+		keysA[slot] = keyA;
+		keysB[slot] = keyB;
+		stamps[slot] = step;
+		reset(slot);
+		size++;
+		return slot;
+	}
+
+	/**
+	 * Applies a part of the impulse of every contact from the previous
+	 * step, before anything is solved. This way each contact is solved
+	 * knowing roughly what its neighbours will do, which makes stacks
+	 * settle faster.
+	 * 
+	 * @param factor how much of the previous impulses to apply.
+	 */
+	void warmStart(float factor) {
+		for (int slot = 0; slot < stamps.length; slot++) {
+			if (stamps[slot] != step - 1) continue;
+			if (bodiesA[slot] == null || !(0.0f < impulses[slot])) continue;
+			// Pushing a sleeping body would wake it
+			if (bodiesA[slot].isSleeping() || bodiesB[slot].isSleeping()) continue;
+			
+			applied[slot] = impulses[slot] * factor;
+			normal.set(normalX[slot], normalY[slot]);
+			Collision.applyImpulse(bodiesA[slot], bodiesB[slot], normal, applied[slot]);
+		}
+	}
+	
+	/**
+	 * Hands over the impulse that was applied by warm starting to the
+	 * collision that is about to be solved. If the contact has changed
+	 * too much the impulse is taken back instead.
+	 * 
+	 * @param slot the slot of the pair.
+	 * @param c the collision that is about to be solved.
+	 */
+	void handOver(int slot, Collision c) {
+		if (applied[slot] == 0.0f) return;
+		
+		if (Collision.WARM_START_TOLERANCE < c.dotSolveNormal(normalX[slot], normalY[slot]) &&
+			bodiesA[slot] == c.a && bodiesB[slot] == c.b) {
+			c.warmImpulse = applied[slot];
+			applied[slot] = 0.0f;
+		} else {
+			revert(slot);
+		}
+	}
+	
+	/**
+	 * Remembers the result of solving a collision.
+	 * 
+	 * @param slot the slot of the pair.
+	 * @param c the collision that was solved.
+	 */
+	void store(int slot, Collision c) {
+		bodiesA[slot] = c.a;
+		bodiesB[slot] = c.b;
+		normalX[slot] = c.normal.x;
+		normalY[slot] = c.normal.y;
+		impulses[slot] = c.impactForce;
+	}
+	
+	/**
+	 * Takes back the warm start impulses of the contacts that
+	 * weren't solved this step, since they are no longer touching.
+	 */
+	void revertWarmStart() {
+		for (int slot = 0; slot < stamps.length; slot++) {
+			if (applied[slot] != 0.0f) revert(slot);
+		}
+	}
+	
+	/**
+	 * Forgets all contacts with the body, so nothing is applied
+	 * to it after it has been removed from the world.
+	 * 
+	 * @param body the body to forget.
+	 */
+	void forget(Body body) {
+		for (int slot = 0; slot < stamps.length; slot++) {
+			if (bodiesA[slot] == body || bodiesB[slot] == body) reset(slot);
+		}
+	}
+	
+	/**
+	 * Applies the opposite of the warm start impulse.
+	 */
+	private void revert(int slot) {
+		normal.set(normalX[slot], normalY[slot]);
+		Collision.applyImpulse(bodiesA[slot], bodiesB[slot], normal, -applied[slot]);
+		applied[slot] = 0.0f;
+	}
+	
+	/**
+	 * Forgets every entry, for when the world is set back to a state
+	 * the entries don't belong to.
+	 */
+	void clear() {
+		Arrays.fill(stamps, 0);
+		Arrays.fill(bodiesA, null);
+		Arrays.fill(bodiesB, null);
+		Arrays.fill(applied, 0.0f);
+		size = 0;
+	}
+	
+	/**
+	 * Returns how many bytes {@link #snapshot(ByteBuffer, ArrayList, int[])}
+	 * would write right now.
+	 *
+	 * @return the size of a snapshot in bytes.
+	 */
+	int getSnapshotSize() {
+		return 4 + 4 + 4 + size * SNAPSHOT_ENTRY_BYTES;
+	}
+
+	/**
+	 * Writes every entry along with the slot it is in, so the table
+	 * can be put back exactly as it was and warm starting goes through
+	 * the contacts in the same order. The bodies are written as their
+	 * index in the world, or -1 for bodies no longer in it. Nothing has
+	 * been applied by warm starting between steps, so that isn't written.
+	 *
+	 * @param buffer the buffer to write to.
+	 * @param bodies the bodies of the world.
+	 * @param indices the index of every body in the world, by its slot in the body store.
+	 */
+	void snapshot(ByteBuffer buffer, ArrayList<Body> bodies, int[] indices) {
+		buffer.putInt(stamps.length);
+		buffer.putInt(step);
+		buffer.putInt(size);
+		for (int slot = 0; slot < stamps.length; slot++) {
+			if (stamps[slot] == 0) continue;
+			buffer.putInt(slot);
+			buffer.putLong(keysA[slot]);
+			buffer.putLong(keysB[slot]);
+			buffer.putInt(stamps[slot]);
+			buffer.putInt(axes[slot]);
+			buffer.putFloat(normalX[slot]);
+			buffer.putFloat(normalY[slot]);
+			buffer.putFloat(impulses[slot]);
+			buffer.putInt(indexOf(bodiesA[slot], bodies, indices));
+			buffer.putInt(indexOf(bodiesB[slot], bodies, indices));
+		}
+	}
+
+	/**
+	 * Reads back what {@link #snapshot(ByteBuffer, ArrayList, int[])} wrote.
+	 *
+	 * @param buffer the buffer to read from.
+	 * @param bodies the bodies of the world.
+	 */
+	void restore(ByteBuffer buffer, ArrayList<Body> bodies) {
+		int capacity = buffer.getInt();
+		if (capacity != stamps.length) {
+			keysA = new long[capacity];
+			keysB = new long[capacity];
+			stamps = new int[capacity];
+			axes = new int[capacity];
+			normalX = new float[capacity];
+			normalY = new float[capacity];
+			impulses = new float[capacity];
+			bodiesA = new Body[capacity];
+			bodiesB = new Body[capacity];
+			applied = new float[capacity];
+		} else {
+			clear();
+		}
+		step = buffer.getInt();
+		size = buffer.getInt();
+		for (int i = 0; i < size; i++) {
+			int slot = buffer.getInt();
+			keysA[slot] = buffer.getLong();
+			keysB[slot] = buffer.getLong();
+			stamps[slot] = buffer.getInt();
+			axes[slot] = buffer.getInt();
+			normalX[slot] = buffer.getFloat();
+			normalY[slot] = buffer.getFloat();
+			impulses[slot] = buffer.getFloat();
+			int a = buffer.getInt();
+			int b = buffer.getInt();
+			bodiesA[slot] = a == -1 ? null : bodies.get(a);
+			bodiesB[slot] = b == -1 ? null : bodies.get(b);
+		}
+	}
+
+	/**
+	 * Returns the index of the body in the world, or -1 if it isn't in it.
+	 */
+	private static int indexOf(Body body, ArrayList<Body> bodies, int[] indices) {
+		if (body == null || indices.length <= body.slot) return -1;
+		int i = indices[body.slot];
+		return 0 <= i && i < bodies.size() && bodies.get(i) == body ? i : -1;
+	}
+
+	/**
+	 * Returns the number of entries in the cache, including the ones
+	 * that will be forgotten next time the cache is full.
+	 *
+	 * @return the number of entries.
+	 */
+	int size() {
+		return size;
+	}
+
+	/**
+	 * Clears the data of an entry.
+	 */
+	private void reset(int slot) {
+		axes[slot] = -1;
+		normalX[slot] = 0.0f;
+		normalY[slot] = 0.0f;
+		impulses[slot] = 0.0f;
+		bodiesA[slot] = null;
+		bodiesB[slot] = null;
+		applied[slot] = 0.0f;
+	}
+
+	/**
+	 * Makes room for new entries, so that finding that many pairs
+	 * never moves the entries around. Slots that were handed out
+	 * before this are no longer valid.
+	 *
+	 * @param count the number of entries to make room for.
+	 */
+	void reserve(int count) {
+		if (stamps.length < (size + count) * 2) {
+			rehash(count);
+		}
+	}
+
+	/**
+	 * Throws away forgotten entries and grows the table
+	 * if it is still too full.
+	 *
+	 * @param count the number of new entries the table needs room for.
+	 */
+	private void rehash(int count) {
+		int live = 0;
+		for (int i = 0; i < stamps.length; i++) {
+			if (step - 1 <= stamps[i]) live++;
+		}
+
+		int capacity = stamps.length;
+		while (capacity < (live + count) * 4) {
+			capacity *= 2;
+		}
+
+		long[] oldKeysA = keysA;
+		long[] oldKeysB = keysB;
+		int[] oldStamps = stamps;
+		int[] oldAxes = axes;
+		float[] oldNormalX = normalX;
+		float[] oldNormalY = normalY;
+		float[] oldImpulses = impulses;
+		Body[] oldBodiesA = bodiesA;
+		Body[] oldBodiesB = bodiesB;
+		float[] oldApplied = applied;
+
+		keysA = new long[capacity];
+		keysB = new long[capacity];
+		stamps = new int[capacity];
+		axes = new int[capacity];
+		normalX = new float[capacity];
+		normalY = new float[capacity];
+		impulses = new float[capacity];
+		bodiesA = new Body[capacity];
+		bodiesB = new Body[capacity];
+		applied = new float[capacity];
+		Arrays.fill(axes, -1);
+		size = 0;
+
+		int mask = capacity - 1;
+		for (int i = 0; i < oldStamps.length; i++) {
+			if (oldStamps[i] < step - 1) continue;
+			int slot = hash(oldKeysA[i], oldKeysB[i]) & mask;
+			while (stamps[slot] != 0) {
+				slot = (slot + 1) & mask;
+			}
+			keysA[slot] = oldKeysA[i];
+			keysB[slot] = oldKeysB[i];
+			stamps[slot] = oldStamps[i];
+			axes[slot] = oldAxes[i];
+			normalX[slot] = oldNormalX[i];
+			normalY[slot] = oldNormalY[i];
+			impulses[slot] = oldImpulses[i];
+			bodiesA[slot] = oldBodiesA[i];
+			bodiesB[slot] = oldBodiesB[i];
+			applied[slot] = oldApplied[i];
+			size++;
+		}
+	}
+
+	/**
+	 * Mixes the keys into a hash.
+	 */
+	private static int hash(long keyA, long keyB) {
+		long h = (keyA * 0x9E3779B97F4A7C15L) ^ (keyB * 0xC2B2AE3D27D4EB4FL);
+		return (int) (h ^ (h >>> 32));
+	}
+}
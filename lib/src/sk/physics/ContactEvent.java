@@ -0,0 +1,73 @@
+package sk.physics;
+
+/**
+ * Something that happened between a pair of bodies during a step.
+ * Every pair of touching bodies gets one event per step, no matter
+ * how many of their shapes are touching.
+ *
+ * @author Ed
+ *
+ */
+public class ContactEvent {
+
+	/**
+	 * The kinds of events.
+	 */
+	public enum Type {
+		/**
+		 * The bodies started touching this step.
+		 */
+		BEGIN,
+		/**
+		 * The bodies were touching in the previous step and still are.
+		 */
+		STAY,
+		/**
+		 * The bodies stopped touching this step, or one of them was
+		 * removed from the world.
+		 */
+		END
+	}
+
+	// What happened
+	public Type type;
+
+	// The bodies, a is always the one created first
+	public Body a, b;
+
+	// The first collision between the bodies as seen by a, so the
+	// normal points away from a, null for END
+	public Collision collision;
+
+	/**
+	 * Checks if the body is one of the two in the event.
+	 *
+	 * @param body the body to look for.
+	 * @return true if the body is a or b.
+	 */
+	public boolean involves(Body body) {
+		return a == body || b == body;
+	}
+
+	/**
+	 * Checks if either of the bodies has any of the tags.
+	 *
+	 * @param tags the mask of tags, from {@link Tags#mask(String...)}.
+	 * @return true if either body has one of the tags.
+	 */
+	public boolean involves(int tags) {
+		return ((a.getTagBits() | b.getTagBits()) & tags) != 0;
+	}
+
+	/**
+	 * Returns the body the specified body touched.
+	 *
+	 * @param self one of the bodies in the event.
+	 * @return the other body, or null if self isn't in the event.
+	 */
+	public Body getOther(Body self) {
+		if (a == self) return b;
+		if (b == self) return a;
+		return null;
+	}
+}
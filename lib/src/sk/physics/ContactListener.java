@@ -0,0 +1,33 @@
+package sk.physics;
+
+/**
+ * Listens to bodies starting, continuing and stopping to touch.
+ * Listeners are added to a world with
+ * {@link World#addContactListener(int, ContactListener)}.
+ *
+ * @author Ed
+ *
+ */
+public interface ContactListener {
+
+	/**
+	 * Called at the end of the step for every event that matches
+	 * the tags the listener was added with. The listener is called
+	 * on the thread stepping the world.
+	 * <p>
+	 * A world stepped by a {@link WorldWorker} calls its listeners on
+	 * the worker thread, while another world may be stepped on the
+	 * thread that started it. The listener may then only touch the
+	 * bodies of its own world and state that nothing else uses until
+	 * {@link WorldWorker#await()} has returned, like a counter that is
+	 * read by the game afterwards. It must not change other worlds,
+	 * and it must not create or remove entities.
+	 * </p>
+	 * <p>
+	 * The event is reused, so it must not be kept after returning.
+	 * </p>
+	 *
+	 * @param event the event.
+	 */
+	public void onContact(ContactEvent event);
+}
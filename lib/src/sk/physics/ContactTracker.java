@@ -0,0 +1,224 @@
+package sk.physics;
+
+import java.util.Arrays;
+
+/**
+ * Remembers which pairs of bodies were touching in the previous
+ * step, so the world can tell when they start and stop touching.
+ * <p>
+ * Pairs are kept in a table keyed on the ids of the two bodies,
+ * stamped with the step they last touched in, just like the
+ * {@link ContactCache}. The events of a step are queued up and
+ * handed to the listeners once the step is done.
+ * </p>
+ *
+ * @author Ed
+ *
+ */
+class ContactTracker {
+
+	// A stamp that is never current, for pairs that have been forgotten
+	private static final int FORGOTTEN = -1;
+
+	// The keys, (smaller id << 32) | larger id, a stamp of 0 means empty
+	private long[] keys = new long[64];
+	private int[] stamps = new int[64];
+	private Body[] bodiesA = new Body[64];
+	private Body[] bodiesB = new Body[64];
+	private int size = 0;
+	private int step = 1;
+
+	// The events waiting to be handed out
+	private ContactEvent.Type[] types = new ContactEvent.Type[16];
+	private Body[] eventsA = new Body[16];
+	private Body[] eventsB = new Body[16];
+	private Collision[] eventCollisions = new Collision[16];
+	private int events = 0;
+
+	/**
+	 * Moves on to the next step.
+	 */
+	void nextStep() {
+		step++;
+	}
+
+	/**
+	 * Records that the bodies are touching this step. Only the first
+	 * call for a pair in a step creates an event.
+	 *
+	 * @param a the first body.
+	 * @param ca the collision as seen by the first body.
+	 * @param b the second body.
+	 * @param cb the collision as seen by the second body.
+	 */
+	void touch(Body a, Collision ca, Body b, Collision cb) {
+		if (b.getId() < a.getId()) {
+			Body body = a;
+			a = b;
+			b = body;
+			ca = cb;
+		}
+		long key = ((long) a.getId() << 32) | b.getId();
+
+		int mask = stamps.length - 1;
+		int slot = hash(key) & mask;
+		while (stamps[slot] != 0) {
+			if (keys[slot] == key) {
+				if (stamps[slot] == step) return;
+				queue(stamps[slot] == step - 1 ? ContactEvent.Type.STAY : ContactEvent.Type.BEGIN, a, b, ca);
+				stamps[slot] = step;
+				bodiesA[slot] = a;
+				bodiesB[slot] = b;
+				return;
+			}
+			slot = (slot + 1) & mask;
+		}
+
+		if (stamps.length < (size + 1) * 2) {
+			rehash();
+			touch(a, ca, b, null);
+			return;
+		}
+
+		keys[slot] = key;
+		stamps[slot] = step;
+		bodiesA[slot] = a;
+		bodiesB[slot] = b;
+		size++;
+		queue(ContactEvent.Type.BEGIN, a, b, ca);
+	}
+
+	/**
+	 * Ends the step, queueing END events for the pairs that touched in
+	 * the previous step but not in this one. Pairs where neither body
+	 * was moved by the world weren't tested, so they are kept without
+	 * an event.
+	 */
+	void finish() {
+		for (int slot = 0; slot < stamps.length; slot++) {
+			if (stamps[slot] != step - 1) continue;
+			if (World.isResting(bodiesA[slot]) && World.isResting(bodiesB[slot])) {
+				stamps[slot] = step;
+			} else {
+				queue(ContactEvent.Type.END, bodiesA[slot], bodiesB[slot], null);
+			}
+		}
+	}
+
+	/**
+	 * Forgets all pairs with the body, queueing END events
+	 * for the ones that were touching.
+	 *
+	 * @param body the body to forget.
+	 */
+	void forget(Body body) {
+		for (int slot = 0; slot < stamps.length; slot++) {
+			if (bodiesA[slot] != body && bodiesB[slot] != body) continue;
+			if (step - 1 <= stamps[slot]) {
+				queue(ContactEvent.Type.END, bodiesA[slot], bodiesB[slot], null);
+			}
+			stamps[slot] = FORGOTTEN;
+			bodiesA[slot] = null;
+			bodiesB[slot] = null;
+		}
+	}
+
+	/**
+	 * Returns the number of queued events.
+	 *
+	 * @return the number of events.
+	 */
+	int size() {
+		return events;
+	}
+
+	/**
+	 * Fills the event with a queued event.
+	 *
+	 * @param i the index of the event.
+	 * @param event the event to fill.
+	 */
+	void get(int i, ContactEvent event) {
+		event.type = types[i];
+		event.a = eventsA[i];
+		event.b = eventsB[i];
+		event.collision = eventCollisions[i];
+	}
+
+	/**
+	 * Throws away the queued events.
+	 */
+	void clear() {
+		Arrays.fill(eventsA, 0, events, null);
+		Arrays.fill(eventsB, 0, events, null);
+		Arrays.fill(eventCollisions, 0, events, null);
+		events = 0;
+	}
+
+	/**
+	 * Adds an event to the queue.
+	 */
+	private void queue(ContactEvent.Type type, Body a, Body b, Collision c) {
+		if (events == types.length) {
+			int capacity = events * 2;
+			types = Arrays.copyOf(types, capacity);
+			eventsA = Arrays.copyOf(eventsA, capacity);
+			eventsB = Arrays.copyOf(eventsB, capacity);
+			eventCollisions = Arrays.copyOf(eventCollisions, capacity);
+		}
+		types[events] = type;
+		eventsA[events] = a;
+		eventsB[events] = b;
+		eventCollisions[events] = c;
+		events++;
+	}
+
+	/**
+	 * Throws away pairs that stopped touching and grows the
+	 * table if it is still too full.
+	 */
+	private void rehash() {
+		int live = 0;
+		for (int i = 0; i < stamps.length; i++) {
+			if (step - 1 <= stamps[i]) live++;
+		}
+
+		int capacity = stamps.length;
+		while (capacity < (live + 1) * 4) {
+			capacity *= 2;
+		}
+
+		long[] oldKeys = keys;
+		int[] oldStamps = stamps;
+		Body[] oldBodiesA = bodiesA;
+		Body[] oldBodiesB = bodiesB;
+
+		keys = new long[capacity];
+		stamps = new int[capacity];
+		bodiesA = new Body[capacity];
+		bodiesB = new Body[capacity];
+		size = 0;
+
+		int mask = capacity - 1;
+		for (int i = 0; i < oldStamps.length; i++) {
+			if (oldStamps[i] < step - 1) continue;
+			int slot = hash(oldKeys[i]) & mask;
+			while (stamps[slot] != 0) {
+				slot = (slot + 1) & mask;
+			}
+			keys[slot] = oldKeys[i];
+			stamps[slot] = oldStamps[i];
+			bodiesA[slot] = oldBodiesA[i];
+			bodiesB[slot] = oldBodiesB[i];
+			size++;
+		}
+	}
+
+	/**
+	 * Mixes the key into a hash.
+	 */
+	private static int hash(long key) {
+		long h = key * 0x9E3779B97F4A7C15L;
+		return (int) (h ^ (h >>> 32));
+	}
+}
@@ -0,0 +1,278 @@
+package sk.physics;
+
+import sk.gfx.Transform;
+import sk.util.vector.Vector2f;
+
+/**
+ * Tests shapes with GJK, and finds how deep they overlap with EPA.
+ * <p>
+ * SAT projects every point onto every normal, so the work grows with
+ * the square of the number of points. GJK and EPA only look for the
+ * point furthest along one direction at a time, which is linear, and
+ * they rarely need many directions. That makes them faster for shapes
+ * with a lot of points, like terrain traced from art, and slower for
+ * boxes, where SAT only has a couple of axes to check.
+ * </p>
+ * <p>
+ * Both work on the Minkowski difference of the shapes, A - B, which
+ * contains the origin exactly when the shapes overlap. The points of
+ * the difference are never all created, only the ones that are found
+ * while searching. Everything is relative to the center of A.
+ * </p>
+ *
+ * @author Ed
+ *
+ */
+final class GJK {
+
+	// Gives up on shapes that don't converge, which only happens with broken shapes
+	private static final int MAX_ITERATIONS = 64;
+
+	// How close the furthest point has to be to the closest edge for EPA to stop
+	private static final float TOLERANCE = 1.0e-5f;
+
+	private GJK() {}
+
+	/**
+	 * The memory a test works in, kept between tests so they don't
+	 * create garbage. A test only uses it while it runs, but tests
+	 * running at the same time need one each.
+	 */
+	static final class Scratch {
+
+		// The points of the polytope EPA grows, and the normal it finds
+		private float[] polytope = new float[64];
+		private final float[] normal = new float[2];
+
+		/**
+		 * Returns the polytope, with room for at least the length.
+		 */
+		private float[] polytope(int length) {
+			if (polytope.length < length) polytope = new float[length * 2];
+			return polytope;
+		}
+	}
+
+	/**
+	 * Tests one shape from each body against each other. The result is
+	 * the same as {@link Collision#SATtest(Body, int, Body, int)} gives,
+	 * except for rounding, with the normal owned by the second body.
+	 *
+	 * @param a the first body.
+	 * @param shapeA the index of the shape in the first body.
+	 * @param b the second body.
+	 * @param shapeB the index of the shape in the second body.
+	 * @param scratch the memory to work in.
+	 * @return the collision, or null if the shapes aren't overlapping.
+	 */
+	static Collision test(Body a, int shapeA, Body b, int shapeB, Scratch scratch) {
+		TransformedShapes ga = a.geometry;
+		TransformedShapes gb = b.geometry;
+		Transform ta = a.getTransform();
+		Transform tb = b.getTransform();
+
+		Shape sa = a.getShape(shapeA);
+		Shape sb = b.getShape(shapeB);
+		float distanceX = ga.getCenterX(shapeA, sa, ta) - gb.getCenterX(shapeB, sb, tb);
+		float distanceY = ga.getCenterY(shapeA, sa, ta) - gb.getCenterY(shapeB, sb, tb);
+
+		int fromA = ga.pointStart[shapeA] * 2;
+		int toA = ga.pointStart[shapeA + 1] * 2;
+		int fromB = gb.pointStart[shapeB] * 2;
+		int toB = gb.pointStart[shapeB + 1] * 2;
+
+		// The polytope can't have more points than the difference has
+		float[] polytope = scratch.polytope(toA - fromA + toB - fromB + 6);
+		if (!simplex(ga.points, fromA, toA, gb.points, fromB, toB, distanceX, distanceY, polytope)) return null;
+
+		float[] normal = scratch.normal;
+		float depth = expand(ga.points, fromA, toA, gb.points, fromB, toB, distanceX, distanceY, polytope, normal);
+		if (!(0.0f < depth)) return null;
+
+		Collision c = new Collision();
+		c.distance = new Vector2f(distanceX, distanceY);
+		// Pushing B along the normal separates them, so it points towards B
+		c.normal = new Vector2f(normal[0], normal[1]);
+		c.collisionDepth = depth;
+		c.normalOwner = tb;
+		return c;
+	}
+
+	/**
+	 * Searches for a triangle of points from the difference that
+	 * contains the origin.
+	 *
+	 * @param offsetX the x coordinate of the center of A minus the center of B.
+	 * @param offsetY the y coordinate of the center of A minus the center of B.
+	 * @param out where the triangle is written, wound counter clockwise.
+	 * @return true if the origin is inside the difference.
+	 */
+	private static boolean simplex(float[] pa, int fromA, int toA, float[] pb, int fromB, int toB,
+			float offsetX, float offsetY, float[] out) {
+		// Start towards the origin from the middle of the difference
+		float dx = -offsetX;
+		float dy = -offsetY;
+		if (dx == 0.0f && dy == 0.0f) dx = 1.0f;
+
+		// The newest point is A, then B and C
+		float ax = 0.0f, ay = 0.0f, bx = 0.0f, by = 0.0f, cx = 0.0f, cy = 0.0f;
+		int n = 0;
+		for (int iteration = 0; iteration < MAX_ITERATIONS; iteration++) {
+			int i = furthest(pa, fromA, toA, dx, dy);
+			int j = furthest(pb, fromB, toB, -dx, -dy);
+			float sx = pa[i] - pb[j] + offsetX;
+			float sy = pa[i + 1] - pb[j + 1] + offsetY;
+
+			// The difference doesn't reach past the origin, so it can't contain it
+			if (!(0.0f < sx * dx + sy * dy)) return false;
+
+			cx = bx; cy = by;
+			bx = ax; by = ay;
+			ax = sx; ay = sy;
+			n = Math.min(n + 1, 3);
+
+			if (n == 1) {
+				dx = -ax;
+				dy = -ay;
+				if (dx == 0.0f && dy == 0.0f) return false;
+			} else if (n == 2) {
+				// Go from the line towards the origin
+				float abx = bx - ax;
+				float aby = by - ay;
+				dx = -aby;
+				dy = abx;
+				if (0.0f < dx * ax + dy * ay) {
+					dx = -dx;
+					dy = -dy;
+				}
+			} else {
+				float abx = bx - ax;
+				float aby = by - ay;
+				float acx = cx - ax;
+				float acy = cy - ay;
+
+				// The normal of AB facing away from C
+				float px = -aby;
+				float py = abx;
+				if (0.0f < px * acx + py * acy) {
+					px = -px;
+					py = -py;
+				}
+				if (0.0f < -(px * ax + py * ay)) {
+					// The origin is outside AB, forget C
+					n = 2;
+					dx = px;
+					dy = py;
+					continue;
+				}
+
+				// The normal of AC facing away from B
+				px = -acy;
+				py = acx;
+				if (0.0f < px * abx + py * aby) {
+					px = -px;
+					py = -py;
+				}
+				if (0.0f < -(px * ax + py * ay)) {
+					// The origin is outside AC, forget B
+					bx = cx;
+					by = cy;
+					n = 2;
+					dx = px;
+					dy = py;
+					continue;
+				}
+
+				out[0] = ax; out[1] = ay;
+				if (0.0f < abx * acy - aby * acx) {
+					out[2] = bx; out[3] = by;
+					out[4] = cx; out[5] = cy;
+				} else {
+					out[2] = cx; out[3] = cy;
+					out[4] = bx; out[5] = by;
+				}
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Grows the triangle found by {@link #simplex} towards the edge of
+	 * the difference closest to the origin. That edge tells how far and
+	 * in which direction the shapes have to be moved apart.
+	 *
+	 * @param polytope the triangle, with room for every point of the difference
+	 * and three more.
+	 * @param normal where the normal of the closest edge is written.
+	 * @return the distance to the closest edge.
+	 */
+	private static float expand(float[] pa, int fromA, int toA, float[] pb, int fromB, int toB,
+			float offsetX, float offsetY, float[] polytope, float[] normal) {
+		int capacity = toA - fromA + toB - fromB + 6;
+		int n = 3;
+		float distance = 0.0f;
+		for (int iteration = 0; iteration < MAX_ITERATIONS; iteration++) {
+			// Find the edge closest to the origin
+			int closest = -1;
+			distance = Float.MAX_VALUE;
+			float nx = 0.0f;
+			float ny = 0.0f;
+			for (int i = 0; i < n; i++) {
+				int j = i + 1 == n ? 0 : i + 1;
+				float ex = polytope[j * 2] - polytope[i * 2];
+				float ey = polytope[j * 2 + 1] - polytope[i * 2 + 1];
+				float length = (float) Math.sqrt(ex * ex + ey * ey);
+				if (length == 0.0f) continue;
+
+				// Counter clockwise, so this points out
+				float ox = ey / length;
+				float oy = -ex / length;
+				float d = ox * polytope[i * 2] + oy * polytope[i * 2 + 1];
+				if (d < distance) {
+					distance = d;
+					closest = i;
+					nx = ox;
+					ny = oy;
+				}
+			}
+			if (closest == -1) return 0.0f;
+			normal[0] = nx;
+			normal[1] = ny;
+
+			// If there is nothing further out along the edge it is on the outside
+			int i = furthest(pa, fromA, toA, nx, ny);
+			int j = furthest(pb, fromB, toB, -nx, -ny);
+			float sx = pa[i] - pb[j] + offsetX;
+			float sy = pa[i + 1] - pb[j + 1] + offsetY;
+			float reach = sx * nx + sy * ny;
+			if (reach - distance <= TOLERANCE * Math.max(1.0f, Math.abs(reach))) break;
+			if (n * 2 == capacity) break;
+
+			// Put the new point between the ends of the edge
+			System.arraycopy(polytope, (closest + 1) * 2, polytope, (closest + 2) * 2, (n - closest - 1) * 2);
+			polytope[(closest + 1) * 2] = sx;
+			polytope[(closest + 1) * 2 + 1] = sy;
+			n++;
+		}
+		return distance;
+	}
+
+	/**
+	 * Finds the point furthest along the direction.
+	 *
+	 * @return the index of the x coordinate of the point.
+	 */
+	private static int furthest(float[] points, int from, int to, float x, float y) {
+		int best = from;
+		float max = points[from] * x + points[from + 1] * y;
+		for (int i = from + 2; i < to; i += 2) {
+			float dot = points[i] * x + points[i + 1] * y;
+			if (max < dot) {
+				max = dot;
+				best = i;
+			}
+		}
+		return best;
+	}
+}
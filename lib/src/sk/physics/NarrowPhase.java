@@ -0,0 +1,29 @@
+package sk.physics;
+
+/**
+ * The ways the world can run the narrow phase, the part of the
+ * step that tests the shapes of the pairs found by the broad phase.
+ *
+ * @author Ed
+ *
+ */
+public enum NarrowPhase {
+	/**
+	 * Tests a pair of shapes and solves the collision right away,
+	 * so every test sees where the earlier collisions pushed the
+	 * bodies. This is the default.
+	 */
+	SEQUENTIAL,
+	/**
+	 * Tests all pairs of shapes first and then solves the collisions
+	 * in order, on the calling thread. Gives the exact same result
+	 * as {@link #PARALLEL}, which makes it useful for comparing.
+	 */
+	BATCHED,
+	/**
+	 * Tests all pairs of shapes on the worker threads of the common
+	 * fork/join pool and then solves the collisions in order, on
+	 * the calling thread.
+	 */
+	PARALLEL
+}
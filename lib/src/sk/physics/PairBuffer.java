@@ -0,0 +1,108 @@
+package sk.physics;
+
+import java.util.Arrays;
+
+/**
+ * A growing list of body pairs that might be colliding. The
+ * pairs are stored as indices into the body list of the world,
+ * packed into longs, so filling and sorting the list doesn't
+ * create any garbage once it has grown large enough.
+ *
+ * @author Ed
+ *
+ */
+public class PairBuffer {
+
+	private long[] pairs = new long[64];
+	private int size = 0;
+
+	// The pairs looked at with check(), and how many of them didn't
+	// share a layer, only counted when the world asks for it
+	boolean counting = false;
+	int candidates = 0;
+	int layerFiltered = 0;
+
+	/**
+	 * Removes all pairs from the buffer, keeping the memory.
+	 */
+	public void clear() {
+		size = 0;
+		candidates = 0;
+		layerFiltered = 0;
+	}
+
+	/**
+	 * Checks if two bodies may collide, with {@link World#canCollide(Body, Body)}.
+	 * Broad phases should check the pairs they look at with this, so
+	 * the world can tell how many pairs were looked at and left out.
+	 *
+	 * @param a the first body.
+	 * @param b the second body.
+	 * @return true if the bodies may collide.
+	 */
+	public boolean check(Body a, Body b) {
+		if (counting) {
+			candidates++;
+			if (!a.sharesLayer(b)) layerFiltered++;
+		}
+		return World.canCollide(a, b);
+	}
+
+	/**
+	 * Adds a pair to the buffer. The order of the indices doesn't
+	 * matter, the larger one is always stored first.
+	 *
+	 * @param i the index of the first body.
+	 * @param j the index of the second body.
+	 */
+	public void add(int i, int j) {
+		if (size == pairs.length) {
+			pairs = Arrays.copyOf(pairs, pairs.length * 2);
+		}
+		if (i < j) {
+			int tmp = i;
+			i = j;
+			j = tmp;
+		}
+		pairs[size++] = ((long) i << 32) | (j & 0xFFFFFFFFL);
+	}
+
+	/**
+	 * Sorts the pairs so they come in the same order as
+	 * they would in a nested loop over all bodies.
+	 */
+	public void sort() {
+		Arrays.sort(pairs, 0, size);
+	}
+
+	/**
+	 * Returns the number of pairs in the buffer.
+	 *
+	 * @return the number of pairs.
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Returns the index of the first body in the pair, this is
+	 * always the larger index.
+	 *
+	 * @param i the index of the pair.
+	 * @return the index of the first body.
+	 */
+	public int getA(int i) {
+		return (int) (pairs[i] >>> 32);
+	}
+
+	/**
+	 * Returns the index of the second body in the pair, this is
+	 * always the smaller index.
+	 *
+	 * @param i the index of the pair.
+	 * @return the index of the second body.
+	 */
+	public int getB(int i) {
+		return (int) pairs[i];
+	}
+}
@@ -0,0 +1,151 @@
+package sk.physics;
+
+/**
+ * What a world did in its latest update. The world keeps one and
+ * fills it in as it goes, so it can be read every frame without
+ * creating garbage, see {@link World#getStats()}.
+ * <p>
+ * The steps and the time of the update are always kept. Counting
+ * pairs and tests and timing the parts of each step is only done
+ * when {@link #enabled} is set, so it costs nothing otherwise.
+ * </p>
+ * <p>
+ * The totals are never reset, which makes it easy to compare
+ * two moments, like before and after a frame that stuttered.
+ * </p>
+ *
+ * @author Ed
+ *
+ */
+public class PhysicsStats {
+
+	// If the pairs and tests are counted and the parts of the steps timed
+	public boolean enabled = false;
+
+	// The steps taken in the latest update, and how many of them
+	// were cut down to stay within the budget
+	public int steps = 0;
+	public int degradedSteps = 0;
+
+	// The steps that were skipped in the latest update, since there
+	// was no time left or the world had fallen too far behind
+	public int droppedSteps = 0;
+
+	// How long the latest update took, in nanoseconds
+	public long updateNanos = 0;
+
+	// The pairs of bodies the broad phase looked at, how many of them
+	// didn't share a layer, and how many were left out for any reason
+	public int candidatePairs = 0;
+	public int layerFiltered = 0;
+	public int broadPhaseRejects = 0;
+
+	// The pairs of bodies the broad phase found, the pairs of shapes
+	// whose boxes overlapped so they were tested, and how many of
+	// those tests were SAT and found a collision
+	public int pairs = 0;
+	public int shapeTests = 0;
+	public int satTests = 0;
+	public int satHits = 0;
+
+	// The collisions that were solved
+	public int solves = 0;
+
+	// How long the parts of the steps took, in nanoseconds. Integrating
+	// includes sleeping and stopping bullets, the narrow phase includes
+	// the triggers, and solving includes warm starting
+	public long integrateNanos = 0;
+	public long broadPhaseNanos = 0;
+	public long narrowPhaseNanos = 0;
+	public long solveNanos = 0;
+
+	// The steps, cut down steps and dropped steps since the world was created
+	public long totalSteps = 0;
+	public long totalDegradedSteps = 0;
+	public long totalDroppedSteps = 0;
+
+	// When the part of the step being timed started
+	private long mark = 0;
+
+	/**
+	 * Forgets the counts of the latest update, before a new one starts.
+	 */
+	void beginUpdate() {
+		steps = 0;
+		degradedSteps = 0;
+		droppedSteps = 0;
+		updateNanos = 0;
+		candidatePairs = 0;
+		layerFiltered = 0;
+		broadPhaseRejects = 0;
+		pairs = 0;
+		shapeTests = 0;
+		satTests = 0;
+		satHits = 0;
+		solves = 0;
+		integrateNanos = 0;
+		broadPhaseNanos = 0;
+		narrowPhaseNanos = 0;
+		solveNanos = 0;
+	}
+
+	/**
+	 * Starts timing a part of the step, if timing is enabled.
+	 */
+	void mark() {
+		if (enabled) mark = System.nanoTime();
+	}
+
+	/**
+	 * Returns the time since the previous mark, and marks the
+	 * start of the next part.
+	 *
+	 * @return the time in nanoseconds.
+	 */
+	long lap() {
+		long now = System.nanoTime();
+		long time = now - mark;
+		mark = now;
+		return time;
+	}
+
+	/**
+	 * Counts a step that was taken.
+	 *
+	 * @param degraded if the step was cut down.
+	 */
+	void countStep(boolean degraded) {
+		steps++;
+		totalSteps++;
+		if (degraded) {
+			degradedSteps++;
+			totalDegradedSteps++;
+		}
+	}
+
+	/**
+	 * Counts steps that were skipped.
+	 *
+	 * @param dropped the number of steps.
+	 */
+	void countDropped(int dropped) {
+		droppedSteps += dropped;
+		totalDroppedSteps += dropped;
+	}
+
+	/**
+	 * Returns the stats of the latest update on one line, short
+	 * enough for a debug overlay or a log.
+	 */
+	@Override
+	public String toString() {
+		String text = "steps " + steps + " (" + degradedSteps + " cut down, " + droppedSteps + " dropped) "
+				+ String.format("%.2f", updateNanos / 1.0e6) + " ms";
+		if (!enabled) return text;
+		return text + ", pairs " + pairs + " of " + candidatePairs + " (" + layerFiltered + " by layer)"
+				+ ", tests " + shapeTests + ", SAT " + satHits + " of " + satTests + ", solves " + solves
+				+ String.format(", integrate %.2f broad %.2f narrow %.2f solve %.2f ms",
+						integrateNanos / 1.0e6, broadPhaseNanos / 1.0e6,
+						narrowPhaseNanos / 1.0e6, solveNanos / 1.0e6);
+	}
+}
@@ -0,0 +1,25 @@
+package sk.physics;
+
+import sk.util.vector.Vector2f;
+
+/**
+ * Where a ray hit something. The same hit can be passed to
+ * {@link World#raycast(Vector2f, Vector2f, short, RaycastHit)}
+ * over and over, so casting rays doesn't create any garbage.
+ *
+ * @author Ed
+ *
+ */
+public class RaycastHit {
+
+	// The body and the index of the shape that was hit
+	public Body body = null;
+	public int shape = -1;
+
+	// How far along the ray the hit is, 0 at the start and 1 at the end
+	public float fraction = 1.0f;
+
+	// The point where the ray hit, and the normal of the edge it hit
+	public final Vector2f point = new Vector2f();
+	public final Vector2f normal = new Vector2f();
+}
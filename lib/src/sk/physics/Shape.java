@@ -2,6 +2,7 @@ package sk.physics;
 
 import java.util.ArrayList;
 
+import sk.debug.Debug;
 import sk.gfx.Transform;
 import sk.gfx.Vertex2D;
 import sk.util.vector.Vector2f;
@@ -22,12 +23,16 @@ import sk.util.vector.Vector3f;
  */
 public class Shape {
 	
-	private Vector2f[] points;
-	private Vector2f[] normals;
+	// Read directly by the collision code, which shouldn't create garbage
+	Vector2f[] points;
+	Vector2f[] normals;
 	
 	// A vector that points from the center of the body, to the center of the shape
 	// (The body is always at 0, 0
-	private Vector2f center;
+	Vector2f center;
+	
+	// How far circles and capsules reach out from their points, 0 for polygons
+	float radius = 0.0f;
 	
 	private float broadPhaseLength = 0.0f;
 	
@@ -103,6 +108,81 @@ public class Shape {
 		processPoints();
 	}
 	
+	/**
+	 * Creates a circle. Circles are tested against other shapes
+	 * directly, without projecting them, which is a lot cheaper.
+	 * <p>
+	 * Note: The radius is scaled by the smallest scale of the
+	 * transform, so a stretched circle is still a circle.
+	 * </p>
+	 * 
+	 * @param center the center of the circle.
+	 * @param radius the radius of the circle.
+	 * @throws IllegalArgumentException if the radius isn't positive.
+	 */
+	public Shape(Vector2f center, float radius) {
+		this(radius, center);
+	}
+	
+	/**
+	 * Creates a capsule, a line with round ends. Every point closer
+	 * to the line than the radius is inside it. Capsules slide over
+	 * the seams between shapes without catching on corners, which
+	 * makes them good for characters.
+	 * <p>
+	 * Note: The points are scaled like the points of any other shape,
+	 * the radius by the smallest scale of the transform.
+	 * </p>
+	 * 
+	 * @param a one end of the line.
+	 * @param b the other end of the line.
+	 * @param radius the radius around the line.
+	 * @throws IllegalArgumentException if the radius isn't positive,
+	 * or if the ends are the same point.
+	 */
+	public Shape(Vector2f a, Vector2f b, float radius) {
+		this(radius, a, b);
+	}
+	
+	/**
+	 * Creates a circle or a capsule around the points.
+	 * 
+	 * @param radius the radius around the points.
+	 * @param points one or two points.
+	 */
+	private Shape(float radius, Vector2f... points) {
+		if (!(0.0f < radius)) {
+			throw new IllegalArgumentException("Non-positive radius supplied.");
+		}
+		
+		center = new Vector2f();
+		for (Vector2f p : points) {
+			center.add(p);
+		}
+		center.scale(1.0f / (float) points.length);
+		
+		this.points = new Vector2f[points.length];
+		for (int i = 0; i < points.length; i++) {
+			this.points[i] = points[i].clone().sub(center);
+		}
+		
+		if (points.length == 2) {
+			Vector2f edge = Vector2f.sub(points[1], points[0], null);
+			if (edge.x == 0.0f && edge.y == 0.0f) {
+				throw new IllegalArgumentException("The ends of a capsule may not be the same point.");
+			}
+			// The only edge of a capsule is the line, both sides of it
+			Vector2f normal = new Vector2f(-edge.y, edge.x);
+			normal.normalise();
+			this.normals = new Vector2f[] { normal };
+		} else {
+			this.normals = new Vector2f[0];
+		}
+		
+		this.radius = radius;
+		calculateBPRange();
+	}
+	
 	/**
 	 * Processes the points in the this shape and generates the
 	 * appropriate normal and edge data. This speeds
@@ -169,6 +249,31 @@ public class Shape {
 		normals.toArray(this.normals);
 	}
 	
+	/**
+	 * Drops normals that are closer to parallel than the limit to one
+	 * that is kept, so they are only tested once.
+	 * 
+	 * @param parallel the smallest absolute dot product that counts as parallel.
+	 */
+	void mergeNormals(float parallel) {
+		ArrayList<Vector2f> merged = new ArrayList<Vector2f>(normals.length);
+		for (Vector2f normal : normals) {
+			int j = 0;
+			for (; j < merged.size(); j++) {
+				if (parallel <= Math.abs(merged.get(j).dot(normal))) {
+					break;
+				}
+			}
+			
+			if (j == merged.size()) {
+				merged.add(normal);
+			}
+		}
+		
+		normals = new Vector2f[merged.size()];
+		merged.toArray(normals);
+	}
+	
 	/**
 	 * Calculates the Broad Phase Length of the body.
 	 */
@@ -177,6 +282,7 @@ public class Shape {
 		for (Vector2f p : points) {
 			broadPhaseLength = Math.max(broadPhaseLength, Math.abs(p.length()));
 		}
+		broadPhaseLength += radius;
 	}
 	
 	/**
@@ -188,6 +294,28 @@ public class Shape {
 		return new Vector2f(center.x * t.scale.x, center.y * t.scale.y).add(t.position);
 	}
 	
+	/**
+	 * Returns the x coordinate of the center position of the shape,
+	 * without creating a new vector.
+	 * 
+	 * @param t the transform of the body.
+	 * @return the x coordinate of the center position.
+	 */
+	float getCenterX(Transform t) {
+		return center.x * t.scale.x + t.position.x;
+	}
+	
+	/**
+	 * Returns the y coordinate of the center position of the shape,
+	 * without creating a new vector.
+	 * 
+	 * @param t the transform of the body.
+	 * @return the y coordinate of the center position.
+	 */
+	float getCenterY(Transform t) {
+		return center.y * t.scale.y + t.position.y;
+	}
+	
 	/**
 	 * Draws this shape.
 	 * 
@@ -200,6 +328,18 @@ public class Shape {
 	 * @param color the color to draw with.
 	 */
 	public void _draw(Transform t, Vector3f color) {
+		// Round ends
+		if (0.0f < radius) {
+			float r = getRadius(t);
+			for (int i = 0; i < points.length; i++) {
+				Vector2f a = points[i].clone().add(center);
+				a.x *= t.scale.x;
+				a.y *= t.scale.y;
+				a = Vector2f.rotate(a, t.rotation, null).add(t.position);
+				Debug.drawCircle(a, r, color);
+			}
+		}
+		
 		// Bounds
 		for (int i = 0; i < points.length; i++) {
 			Vector2f a = points[i].clone().add(center);
@@ -221,7 +361,7 @@ public class Shape {
 			// Translate
 			b.add(t.position);
 			
-			sk.debug.Debug.drawLine(a, b, color);
+			Debug.drawLine(a, b, color);
 		}
 		
 		// Normals
@@ -229,11 +369,11 @@ public class Shape {
 			Vector2f a = getCenter(t);
 			Vector2f b = getCenter(t).clone().add(n.clone().rotate(t.rotation));
 					
-			sk.debug.Debug.drawLine(a, b, (Vector3f) color.scale(0.5f));		;
+			Debug.drawLine(a, b, (Vector3f) color.scale(0.5f));		;
 		}
 		
 		// The broadphase check
-		sk.debug.Debug.drawCircle(getCenter(t), getBP(t));
+		Debug.drawCircle(getCenter(t), getBP(t));
 	}
 	
 	/**
@@ -282,7 +422,7 @@ public class Shape {
 		for (Vector2f p : points) {
 			max = Math.max(max, castAlong(axis, t, p));
 		}
-		return max;
+		return max + getRadius(t);
 	}
 	
 	/**
@@ -298,7 +438,26 @@ public class Shape {
 		for (Vector2f p : points) {
 			min = Math.min(min, castAlong(axis, t, p));
 		}
-		return min;
+		return min - getRadius(t);
+	}
+	
+	/**
+	 * Returns the radius of the shape if it's a circle or a capsule.
+	 * 
+	 * @return the radius, 0 for polygons.
+	 */
+	public float getRadius() {
+		return radius;
+	}
+	
+	/**
+	 * Returns the radius of the shape scaled by the transform.
+	 * 
+	 * @param t the transform of the body.
+	 * @return the scaled radius, 0 for polygons.
+	 */
+	float getRadius(Transform t) {
+		return radius * Math.min(Math.abs(t.scale.x), Math.abs(t.scale.y));
 	}
 
 	/**
@@ -0,0 +1,288 @@
+package sk.physics;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import sk.util.vector.Vector2f;
+
+/**
+ * Turns a lot of small convex polygons, the way level editors like
+ * to make them, into fewer and larger shapes. Pieces that share an
+ * edge are merged if the result is still convex, and points that
+ * are on the line between their neighbours are removed.
+ * <p>
+ * Every piece remembers the outline it was made from, with all the
+ * points that have been removed. A point is only removed if every
+ * point of that outline between its neighbours is within the tolerance
+ * of the new edge, so no matter how many points are removed in a row
+ * the result never strays further than the tolerance from the original.
+ * Bodies collide with the result the same way they did with the pieces,
+ * except for the edges inside it that bodies used to catch on.
+ * </p>
+ * <p>
+ * Edges of the result that are within {@link #PARALLEL} of each other
+ * are tested as one axis. Shapes made any other way are left alone.
+ * </p>
+ *
+ * @author Ed
+ *
+ */
+public final class ShapeOptimizer {
+
+	// Merged shapes aren't allowed to have more points than this, large
+	// shapes are slow to test and the broad phase can't tell much about them
+	public static int MAX_POINTS = 8;
+
+	// Normals of the result closer to parallel than this are only tested
+	// once, edges drawn by hand are rarely exactly parallel even when they should be
+	static final float PARALLEL = 0.99999f;
+
+	private ShapeOptimizer() {}
+
+	/**
+	 * A piece of the result, the outline it was made from and
+	 * which points of that outline are still used.
+	 */
+	private static final class Piece {
+
+		// The original points, counter clockwise
+		final Vector2f[] outline;
+		final boolean[] kept;
+		int size;
+
+		Piece(Vector2f[] outline) {
+			this.outline = outline;
+			this.kept = new boolean[outline.length];
+			Arrays.fill(kept, true);
+			this.size = outline.length;
+		}
+
+		/**
+		 * Returns the points that are still used.
+		 */
+		Vector2f[] points() {
+			Vector2f[] points = new Vector2f[size];
+			int n = 0;
+			for (int i = 0; i < outline.length; i++) {
+				if (kept[i]) points[n++] = outline[i];
+			}
+			return points;
+		}
+
+		/**
+		 * Returns the index in the outline of the next point that is
+		 * still used, going counter clockwise.
+		 */
+		int next(int i) {
+			do {
+				i = (i + 1) % outline.length;
+			} while (!kept[i]);
+			return i;
+		}
+
+		/**
+		 * Returns the index in the outline of the previous point that
+		 * is still used.
+		 */
+		int previous(int i) {
+			do {
+				i = (i + outline.length - 1) % outline.length;
+			} while (!kept[i]);
+			return i;
+		}
+	}
+
+	/**
+	 * Merges and simplifies the polygons and creates the shapes.
+	 * The polygons are not changed.
+	 *
+	 * @param polygons the convex polygons, in any winding.
+	 * @param tolerance how far a point may be moved or removed from the outline.
+	 * @return the shapes, never more than there were polygons.
+	 * @throws IllegalArgumentException if the tolerance is negative.
+	 */
+	public static ArrayList<Shape> optimize(List<Vector2f[]> polygons, float tolerance) {
+		if (tolerance < 0.0f) {
+			throw new IllegalArgumentException("Negative tolerance supplied.");
+		}
+
+		ArrayList<Piece> pieces = new ArrayList<Piece>();
+		for (Vector2f[] polygon : polygons) {
+			Piece piece = clean(new Piece(wind(polygon)), tolerance);
+			// Slivers thinner than the tolerance are dropped
+			if (piece != null) pieces.add(piece);
+		}
+
+		// Keep going over the pieces until nothing more can be merged
+		boolean merged = true;
+		while (merged) {
+			merged = false;
+			for (int i = 0; i < pieces.size(); i++) {
+				for (int j = i + 1; j < pieces.size(); j++) {
+					Piece piece = merge(pieces.get(i), pieces.get(j), tolerance);
+					if (piece == null) continue;
+					pieces.set(i, piece);
+					pieces.remove(j--);
+					merged = true;
+				}
+			}
+		}
+
+		ArrayList<Shape> shapes = new ArrayList<Shape>(pieces.size());
+		for (Piece piece : pieces) {
+			Shape shape = new Shape(piece.points());
+			shape.mergeNormals(PARALLEL);
+			shapes.add(shape);
+		}
+		return shapes;
+	}
+
+	/**
+	 * Copies the polygon, winding it counter clockwise.
+	 */
+	private static Vector2f[] wind(Vector2f[] polygon) {
+		Vector2f[] points = new Vector2f[polygon.length];
+		float area = 0.0f;
+		for (int i = 0; i < polygon.length; i++) {
+			Vector2f a = polygon[i];
+			Vector2f b = polygon[(i + 1) % polygon.length];
+			area += a.x * b.y - b.x * a.y;
+			points[i] = a.clone();
+		}
+		if (area < 0.0f) {
+			for (int i = 0, j = points.length - 1; i < j; i++, j--) {
+				Vector2f tmp = points[i];
+				points[i] = points[j];
+				points[j] = tmp;
+			}
+		}
+		return points;
+	}
+
+	/**
+	 * Removes the points of the piece that are on top of each other or on a line.
+	 *
+	 * @return the piece, or null if less than three points are left.
+	 */
+	private static Piece clean(Piece piece, float tolerance) {
+		Vector2f[] outline = piece.outline;
+
+		// Removing a point can put its neighbours on a line, so go until nothing changes
+		boolean removed = true;
+		while (removed && 3 <= piece.size) {
+			removed = false;
+			for (int i = 0; i < outline.length && 3 <= piece.size; i++) {
+				if (!piece.kept[i] || !isRedundant(piece, i, tolerance)) continue;
+				piece.kept[i] = false;
+				piece.size--;
+				removed = true;
+			}
+		}
+		return piece.size < 3 ? null : piece;
+	}
+
+	/**
+	 * Checks if the point can be removed, which it can if every point
+	 * of the original outline between its neighbours is within the
+	 * tolerance of the edge that would join them.
+	 */
+	private static boolean isRedundant(Piece piece, int i, float tolerance) {
+		int prev = piece.previous(i);
+		int next = piece.next(i);
+		Vector2f a = piece.outline[prev];
+		Vector2f b = piece.outline[next];
+		for (int k = (prev + 1) % piece.outline.length; k != next; k = (k + 1) % piece.outline.length) {
+			if (tolerance < distanceToEdge(piece.outline[k], a, b)) return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Returns the distance from the point to the closest point on the edge.
+	 */
+	private static float distanceToEdge(Vector2f p, Vector2f a, Vector2f b) {
+		float edgeX = b.x - a.x;
+		float edgeY = b.y - a.y;
+		float lengthSquared = edgeX * edgeX + edgeY * edgeY;
+		float t = 0.0f;
+		if (0.0f < lengthSquared) {
+			t = ((p.x - a.x) * edgeX + (p.y - a.y) * edgeY) / lengthSquared;
+			t = Math.max(0.0f, Math.min(1.0f, t));
+		}
+		float x = a.x + edgeX * t - p.x;
+		float y = a.y + edgeY * t - p.y;
+		return (float) Math.sqrt(x * x + y * y);
+	}
+
+	/**
+	 * Checks if two points are on top of each other.
+	 */
+	private static boolean isSame(Vector2f a, Vector2f b, float tolerance) {
+		return Math.abs(a.x - b.x) <= tolerance && Math.abs(a.y - b.y) <= tolerance;
+	}
+
+	/**
+	 * Merges two pieces along an edge they share. The outline of the
+	 * result is made of the outlines of both, without the points that
+	 * were on the shared edge.
+	 *
+	 * @return the merged piece, or null if they don't share an edge,
+	 * the result would be concave or it would have too many points.
+	 */
+	private static Piece merge(Piece a, Piece b, float tolerance) {
+		int na = a.outline.length;
+		int nb = b.outline.length;
+		for (int i = 0; i < na; i++) {
+			if (!a.kept[i]) continue;
+			int i1 = a.next(i);
+			for (int k = 0; k < nb; k++) {
+				if (!b.kept[k]) continue;
+				int k1 = b.next(k);
+				// A shared edge goes the other way in the other piece
+				if (!isSame(a.outline[i], b.outline[k1], tolerance) || !isSame(a.outline[i1], b.outline[k], tolerance)) continue;
+
+				// All of A from the end of the edge around to its start,
+				// then B between the two ends of the edge
+				ArrayList<Vector2f> outline = new ArrayList<Vector2f>(na + nb);
+				ArrayList<Boolean> kept = new ArrayList<Boolean>(na + nb);
+				for (int m = i1; ; m = (m + 1) % na) {
+					outline.add(a.outline[m]);
+					kept.add(a.kept[m]);
+					if (m == i) break;
+				}
+				for (int m = (k1 + 1) % nb; m != k; m = (m + 1) % nb) {
+					outline.add(b.outline[m]);
+					kept.add(b.kept[m]);
+				}
+
+				Piece joined = new Piece(outline.toArray(new Vector2f[outline.size()]));
+				for (int m = 0; m < kept.size(); m++) {
+					if (kept.get(m)) continue;
+					joined.kept[m] = false;
+					joined.size--;
+				}
+				Piece result = joined.size < 3 ? null : clean(joined, tolerance);
+				if (result == null || MAX_POINTS < result.size || !isConvex(result.points())) return null;
+				return result;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Checks if a counter clockwise polygon without points
+	 * on a line is convex.
+	 */
+	private static boolean isConvex(Vector2f[] points) {
+		int n = points.length;
+		for (int i = 0; i < n; i++) {
+			Vector2f a = points[i];
+			Vector2f b = points[(i + 1) % n];
+			Vector2f c = points[(i + 2) % n];
+			float cross = (b.x - a.x) * (c.y - b.y) - (b.y - a.y) * (c.x - b.x);
+			if (cross <= 0.0f) return false;
+		}
+		return true;
+	}
+}
@@ -0,0 +1,237 @@
+package sk.physics;
+
+import java.util.ArrayList;
+
+import sk.gfx.Transform;
+
+/**
+ * A bounding volume hierarchy over the shapes of one body. It
+ * lets the world skip the shapes that are far away from the other
+ * body, which matters for bodies with a lot of shapes, like the
+ * terrain of a level.
+ * <p>
+ * The leaves are the boxes around the shapes, the same boxes the
+ * world compares before testing two shapes, so a shape that is
+ * skipped by the tree would have been skipped by the world anyway.
+ * </p>
+ * <p>
+ * The tree is built once and only refitted when the body moves,
+ * which never happens for static bodies.
+ * </p>
+ *
+ * @author Ed
+ *
+ */
+class ShapeTree {
+
+	// Bodies with fewer shapes than this are not worth a tree
+	public static final int MIN_SHAPES = 4;
+
+	private int numNodes = 0;
+
+	// The bounds of every node, [minX, minY, maxX, maxY]
+	private float[] bounds;
+	// Children of the nodes, leaves store -1 - shapeIndex in left
+	private int[] left;
+	private int[] right;
+
+	private int[] stack;
+
+	/**
+	 * Builds a new tree over the shapes with the current transform.
+	 *
+	 * @param shapes the shapes of the body.
+	 * @param t the transform of the body.
+	 * @param g the transformed shapes of the body, up to date with the transform.
+	 */
+	ShapeTree(ArrayList<Shape> shapes, Transform t, TransformedShapes g) {
+		int n = shapes.size();
+		bounds = new float[(2 * n - 1) * 4];
+		left = new int[2 * n - 1];
+		right = new int[2 * n - 1];
+		stack = new int[2 * n];
+
+		// Sort by the centers while building
+		int[] indices = new int[n];
+		float[] centerX = new float[n];
+		float[] centerY = new float[n];
+		for (int i = 0; i < n; i++) {
+			indices[i] = i;
+			centerX[i] = shapes.get(i).getCenterX(t);
+			centerY[i] = shapes.get(i).getCenterY(t);
+		}
+
+		build(indices, 0, n, centerX, centerY);
+		refit(shapes, t, g);
+	}
+
+	/**
+	 * Builds the subtree for the shapes in the range, splitting
+	 * them in half along the axis where they are the most spread out.
+	 *
+	 * @return the index of the new node.
+	 */
+	private int build(int[] indices, int from, int to, float[] centerX, float[] centerY) {
+		int node = numNodes++;
+		if (to - from == 1) {
+			left[node] = -1 - indices[from];
+			right[node] = -1;
+			return node;
+		}
+
+		float minX = Float.MAX_VALUE, minY = Float.MAX_VALUE;
+		float maxX = -Float.MAX_VALUE, maxY = -Float.MAX_VALUE;
+		for (int i = from; i < to; i++) {
+			minX = Math.min(minX, centerX[indices[i]]);
+			minY = Math.min(minY, centerY[indices[i]]);
+			maxX = Math.max(maxX, centerX[indices[i]]);
+			maxY = Math.max(maxY, centerY[indices[i]]);
+		}
+		float[] keys = maxY - minY < maxX - minX ? centerX : centerY;
+
+		int mid = (from + to) >>> 1;
+		select(indices, from, to - 1, mid, keys);
+
+		left[node] = build(indices, from, mid, centerX, centerY);
+		right[node] = build(indices, mid, to, centerX, centerY);
+		return node;
+	}
+
+	/**
+	 * Partially sorts the indices so the k:th element is in place,
+	 * with smaller keys before it and larger after it.
+	 */
+	private static void select(int[] indices, int lo, int hi, int k, float[] keys) {
+		while (lo < hi) {
+			float pivot = keys[indices[(lo + hi) >>> 1]];
+			int i = lo;
+			int j = hi;
+			while (i <= j) {
+				while (keys[indices[i]] < pivot) i++;
+				while (pivot < keys[indices[j]]) j--;
+				if (i <= j) {
+					int tmp = indices[i];
+					indices[i] = indices[j];
+					indices[j] = tmp;
+					i++;
+					j--;
+				}
+			}
+			if (k <= j) {
+				hi = j;
+			} else if (i <= k) {
+				lo = i;
+			} else {
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Recalculates all the boxes for the current transform. Children
+	 * always come after their parents, so going backwards updates
+	 * the children first.
+	 *
+	 * @param shapes the shapes of the body.
+	 * @param t the transform of the body.
+	 * @param g the transformed shapes of the body, up to date with the transform.
+	 */
+	void refit(ArrayList<Shape> shapes, Transform t, TransformedShapes g) {
+		for (int node = numNodes - 1; 0 <= node; node--) {
+			int b = node * 4;
+			if (left[node] < 0) {
+				int i = -1 - left[node];
+				Shape s = shapes.get(i);
+				bounds[b + 0] = g.getMinX(i, s, t);
+				bounds[b + 1] = g.getMinY(i, s, t);
+				bounds[b + 2] = g.getMaxX(i, s, t);
+				bounds[b + 3] = g.getMaxY(i, s, t);
+			} else {
+				int l = left[node] * 4;
+				int r = right[node] * 4;
+				bounds[b + 0] = Math.min(bounds[l + 0], bounds[r + 0]);
+				bounds[b + 1] = Math.min(bounds[l + 1], bounds[r + 1]);
+				bounds[b + 2] = Math.max(bounds[l + 2], bounds[r + 2]);
+				bounds[b + 3] = Math.max(bounds[l + 3], bounds[r + 3]);
+			}
+		}
+	}
+
+	/**
+	 * Finds all the shapes whose boxes overlap the specified box.
+	 * The indices are written to the array in no particular order,
+	 * the array must have room for every shape in the tree.
+	 *
+	 * @param minX the left edge of the box.
+	 * @param minY the bottom edge of the box.
+	 * @param maxX the right edge of the box.
+	 * @param maxY the top edge of the box.
+	 * @param out the array to write the shape indices to.
+	 * @return the number of shapes found.
+	 */
+	int query(float minX, float minY, float maxX, float maxY, int[] out) {
+		int found = 0;
+		int top = 0;
+		stack[top++] = 0;
+		while (0 < top) {
+			int node = stack[--top];
+			int b = node * 4;
+			if (maxX < bounds[b + 0] || bounds[b + 2] < minX ||
+				maxY < bounds[b + 1] || bounds[b + 3] < minY)
+				continue;
+
+			if (left[node] < 0) {
+				out[found++] = -1 - left[node];
+			} else {
+				stack[top++] = left[node];
+				stack[top++] = right[node];
+			}
+		}
+		return found;
+	}
+
+	/**
+	 * Returns the number of shapes in the tree.
+	 *
+	 * @return the number of shapes.
+	 */
+	int size() {
+		return (numNodes + 1) / 2;
+	}
+
+	/**
+	 * Returns the left edge of the box around all shapes.
+	 * 
+	 * @return the left edge of the root box.
+	 */
+	float getMinX() {
+		return bounds[0];
+	}
+
+	/**
+	 * Returns the bottom edge of the box around all shapes.
+	 * 
+	 * @return the bottom edge of the root box.
+	 */
+	float getMinY() {
+		return bounds[1];
+	}
+
+	/**
+	 * Returns the right edge of the box around all shapes.
+	 * 
+	 * @return the right edge of the root box.
+	 */
+	float getMaxX() {
+		return bounds[2];
+	}
+
+	/**
+	 * Returns the top edge of the box around all shapes.
+	 * 
+	 * @return the top edge of the root box.
+	 */
+	float getMaxY() {
+		return bounds[3];
+	}
+}
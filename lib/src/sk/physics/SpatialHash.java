@@ -0,0 +1,311 @@
+package sk.physics;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * A uniform grid broad phase. Every body is put in all the
+ * cells its bounds touch, and only bodies that share a cell
+ * are tested against each other.
+ * <p>
+ * The cells are stored in a hash table, so the grid doesn't
+ * need to know how large the world is. Bodies that cover
+ * too many cells, like a terrain body spanning the whole
+ * level, are kept on the side and tested against everything.
+ * </p>
+ *
+ * @author Ed
+ *
+ */
+public class SpatialHash implements BroadPhase {
+
+	// Bodies covering more cells than this are not put in the grid
+	public static final int MAX_CELLS_PER_BODY = 64;
+
+	private static final long EMPTY = Long.MIN_VALUE;
+
+	private float cellSize;
+	private float invertedCellSize;
+
+	// The cell range of every body, [x0, y0, x1, y1]
+	private int[] ranges = new int[64 * 4];
+
+	// The hash table, maps a cell to the first entry in the cell
+	private long[] keys = new long[256];
+	private int[] heads = new int[256];
+	private int[] usedSlots = new int[128];
+	private int numUsedSlots = 0;
+
+	// The entries, linked lists of bodies in each cell
+	private int[] entryBody = new int[256];
+	private int[] entryNext = new int[256];
+	private int numEntries = 0;
+
+	// Bodies that are too large for the grid
+	private int[] oversized = new int[16];
+	private int numOversized = 0;
+	
+	// Marks the bodies already found by the current query
+	private int[] queryMarks = new int[64];
+	private int queryStamp = 0;
+
+	/**
+	 * Creates a new spatial hash where each cell is a square with
+	 * the specified side length. A good cell size is slightly larger
+	 * than the common dynamic body.
+	 *
+	 * @param cellSize the side length of each cell.
+	 * @throws IllegalArgumentException if the cell size is 0 or lower.
+	 */
+	public SpatialHash(float cellSize) {
+		if (cellSize <= 0.0f) {
+			throw new IllegalArgumentException("Zero or negative cell size supplied.");
+		}
+		this.cellSize = cellSize;
+		this.invertedCellSize = 1.0f / cellSize;
+		Arrays.fill(keys, EMPTY);
+	}
+
+	/**
+	 * Returns the side length of the cells.
+	 *
+	 * @return the side length of the cells.
+	 */
+	public float getCellSize() {
+		return cellSize;
+	}
+
+	@Override
+	public void findPairs(ArrayList<Body> bodies, PairBuffer out) {
+		clear();
+		if (ranges.length < bodies.size() * 4) {
+			ranges = new int[bodies.size() * 8];
+		}
+
+		for (int i = 0; i < bodies.size(); i++) {
+			insert(i, bodies.get(i));
+		}
+
+		// Pairs inside the grid
+		for (int s = 0; s < numUsedSlots; s++) {
+			int slot = usedSlots[s];
+			int cx = (int) (keys[slot] >> 32);
+			int cy = (int) keys[slot];
+			for (int e = heads[slot]; e != -1; e = entryNext[e]) {
+				int i = entryBody[e];
+				for (int f = entryNext[e]; f != -1; f = entryNext[f]) {
+					int j = entryBody[f];
+					// Only report the pair in the first cell they share
+					if (Math.max(ranges[i * 4 + 0], ranges[j * 4 + 0]) != cx ||
+						Math.max(ranges[i * 4 + 1], ranges[j * 4 + 1]) != cy)
+						continue;
+					addIfColliding(bodies, i, j, out);
+				}
+			}
+		}
+
+		// The large bodies are tested against everything
+		for (int o = 0; o < numOversized; o++) {
+			int i = oversized[o];
+			for (int j = 0; j < bodies.size(); j++) {
+				if (i == j) continue;
+				// Make sure two large bodies only report once
+				if (ranges[j * 4] == Integer.MAX_VALUE && j < i) continue;
+				addIfColliding(bodies, i, j, out);
+			}
+		}
+	}
+
+	@Override
+	public int query(ArrayList<Body> bodies, float minX, float minY, float maxX, float maxY, int[] out) {
+		int x0 = (int) Math.floor(minX * invertedCellSize);
+		int y0 = (int) Math.floor(minY * invertedCellSize);
+		int x1 = (int) Math.floor(maxX * invertedCellSize);
+		int y1 = (int) Math.floor(maxY * invertedCellSize);
+		
+		// Looking through a lot of empty cells is slower than checking every body
+		long cells = ((long) x1 - x0 + 1) * ((long) y1 - y0 + 1);
+		if (bodies.size() < cells) {
+			return BroadPhase.super.query(bodies, minX, minY, maxX, maxY, out);
+		}
+		
+		if (queryMarks.length < bodies.size()) {
+			queryMarks = new int[bodies.size() * 2];
+		}
+		queryStamp++;
+		
+		int found = 0;
+		for (int x = x0; x <= x1; x++) {
+			for (int y = y0; y <= y1; y++) {
+				int slot = lookup(x, y);
+				if (slot == -1) continue;
+				for (int e = heads[slot]; e != -1; e = entryNext[e]) {
+					found = addIfOverlapping(bodies, entryBody[e], minX, minY, maxX, maxY, out, found);
+				}
+			}
+		}
+		
+		for (int o = 0; o < numOversized; o++) {
+			found = addIfOverlapping(bodies, oversized[o], minX, minY, maxX, maxY, out, found);
+		}
+		return found;
+	}
+	
+	/**
+	 * Adds the body to the query result if its bounds overlap
+	 * the box and it hasn't been found already.
+	 * 
+	 * @return the new number of bodies found.
+	 */
+	private int addIfOverlapping(ArrayList<Body> bodies, int i, float minX, float minY, float maxX, float maxY,
+			int[] out, int found) {
+		if (queryMarks[i] == queryStamp) return found;
+		queryMarks[i] = queryStamp;
+		
+		Body b = bodies.get(i);
+		if (maxX < b.minX || b.maxX < minX || maxY < b.minY || b.maxY < minY) return found;
+		out[found] = i;
+		return found + 1;
+	}
+	
+	/**
+	 * Finds the slot of the cell without claiming a new one.
+	 * 
+	 * @return the slot, or -1 if the cell is empty.
+	 */
+	private int lookup(int x, int y) {
+		long key = ((long) x << 32) | (y & 0xFFFFFFFFL);
+		int mask = keys.length - 1;
+		int slot = (int) ((key * 0x9E3779B97F4A7C15L) >>> 40) & mask;
+		while (keys[slot] != EMPTY) {
+			if (keys[slot] == key) return slot;
+			slot = (slot + 1) & mask;
+		}
+		return -1;
+	}
+	
+	/**
+	 * Adds the pair if the bodies are allowed to collide and
+	 * their bounds overlap.
+	 */
+	private void addIfColliding(ArrayList<Body> bodies, int i, int j, PairBuffer out) {
+		Body a = bodies.get(i);
+		Body b = bodies.get(j);
+		if (!out.check(a, b)) return;
+		if (!a.boundsOverlap(b)) return;
+		out.add(i, j);
+	}
+
+	/**
+	 * Puts the body in all the cells it covers.
+	 */
+	private void insert(int index, Body body) {
+		int r = index * 4;
+		if (body.getNumberOfShapes() == 0) {
+			// Nothing to collide with, mark it as not in the grid
+			ranges[r] = Integer.MIN_VALUE;
+			return;
+		}
+
+		int x0 = (int) Math.floor(body.minX * invertedCellSize);
+		int y0 = (int) Math.floor(body.minY * invertedCellSize);
+		int x1 = (int) Math.floor(body.maxX * invertedCellSize);
+		int y1 = (int) Math.floor(body.maxY * invertedCellSize);
+
+		long cells = ((long) x1 - x0 + 1) * ((long) y1 - y0 + 1);
+		if (MAX_CELLS_PER_BODY < cells) {
+			// Too large, it is tested against everything instead
+			ranges[r] = Integer.MAX_VALUE;
+			if (numOversized == oversized.length) {
+				oversized = Arrays.copyOf(oversized, numOversized * 2);
+			}
+			oversized[numOversized++] = index;
+			return;
+		}
+
+		ranges[r + 0] = x0;
+		ranges[r + 1] = y0;
+		ranges[r + 2] = x1;
+		ranges[r + 3] = y1;
+
+		for (int x = x0; x <= x1; x++) {
+			for (int y = y0; y <= y1; y++) {
+				int slot = findSlot(x, y);
+				if (numEntries == entryBody.length) {
+					entryBody = Arrays.copyOf(entryBody, numEntries * 2);
+					entryNext = Arrays.copyOf(entryNext, numEntries * 2);
+				}
+				entryBody[numEntries] = index;
+				entryNext[numEntries] = heads[slot];
+				heads[slot] = numEntries++;
+			}
+		}
+	}
+
+	/**
+	 * Finds the slot for the cell, claims a new one if the
+	 * cell isn't in the table yet.
+	 */
+	private int findSlot(int x, int y) {
+		// Keep the table at most half full
+		if (keys.length < (numUsedSlots + 1) * 2) {
+			grow();
+		}
+
+		long key = ((long) x << 32) | (y & 0xFFFFFFFFL);
+		int mask = keys.length - 1;
+		int slot = (int) ((key * 0x9E3779B97F4A7C15L) >>> 40) & mask;
+		while (keys[slot] != EMPTY) {
+			if (keys[slot] == key) return slot;
+			slot = (slot + 1) & mask;
+		}
+
+		keys[slot] = key;
+		heads[slot] = -1;
+		if (numUsedSlots == usedSlots.length) {
+			usedSlots = Arrays.copyOf(usedSlots, numUsedSlots * 2);
+		}
+		usedSlots[numUsedSlots++] = slot;
+		return slot;
+	}
+
+	/**
+	 * Doubles the size of the hash table and moves all the cells.
+	 */
+	private void grow() {
+		long[] oldKeys = keys;
+		int[] oldHeads = heads;
+		int oldUsed = numUsedSlots;
+		int[] oldSlots = usedSlots;
+
+		keys = new long[oldKeys.length * 2];
+		heads = new int[oldKeys.length * 2];
+		usedSlots = new int[oldSlots.length * 2];
+		Arrays.fill(keys, EMPTY);
+		numUsedSlots = 0;
+
+		int mask = keys.length - 1;
+		for (int s = 0; s < oldUsed; s++) {
+			long key = oldKeys[oldSlots[s]];
+			int slot = (int) ((key * 0x9E3779B97F4A7C15L) >>> 40) & mask;
+			while (keys[slot] != EMPTY) {
+				slot = (slot + 1) & mask;
+			}
+			keys[slot] = key;
+			heads[slot] = oldHeads[oldSlots[s]];
+			usedSlots[numUsedSlots++] = slot;
+		}
+	}
+
+	/**
+	 * Empties all the cells, but keeps the memory.
+	 */
+	private void clear() {
+		for (int s = 0; s < numUsedSlots; s++) {
+			keys[usedSlots[s]] = EMPTY;
+		}
+		numUsedSlots = 0;
+		numEntries = 0;
+		numOversized = 0;
+	}
+}
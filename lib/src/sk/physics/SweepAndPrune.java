@@ -0,0 +1,288 @@
+package sk.physics;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * A sweep and prune broad phase. The bounds of all bodies are
+ * kept as sorted lists of end points, one list per axis. Bodies
+ * barely move between two steps, so the lists are almost sorted
+ * already and an insertion sort puts them back in order in
+ * close to linear time.
+ * <p>
+ * The pairs are found by sweeping along the axis where the bodies
+ * are the most spread out, which makes this a good fit for long
+ * horizontal levels.
+ * </p>
+ * <p>
+ * Queries, like the ones for triggers, search the sorted end points
+ * for the bodies close to the box. Bodies much wider than the rest,
+ * like terrain spanning the level, are checked against every query
+ * on their own, so they don't force each query to look through the
+ * whole level.
+ * </p>
+ * <p>
+ * Every body is tested against all the bodies it overlaps along the
+ * sweep axis. Tall piles or columns of bodies that line up along both
+ * axes make that many tests, so {@link SpatialHash} suits levels like
+ * that better. This broad phase is the better pick when the bodies
+ * are spread along one axis, or move a lot and vary in size.
+ * </p>
+ *
+ * @author Ed
+ *
+ */
+public class SweepAndPrune implements BroadPhase {
+
+	// The bodies the end points were built for
+	private Body[] known = new Body[0];
+
+	// End points are stored as (body index << 1) | (1 if it is a max point)
+	private int[] pointsX = new int[0];
+	private int[] pointsY = new int[0];
+	private float[] valuesX = new float[0];
+	private float[] valuesY = new float[0];
+
+	// The bodies overlapping the sweep line
+	private int[] active = new int[16];
+	private int[] activeIndex = new int[0];
+	private int numActive = 0;
+
+	private int swaps = 0;
+
+	// Bodies much wider than the rest, like the ground, are looked at
+	// separately by queries, so a query only has to look back the reach
+	// from the left edge of its box to find every other body
+	private float queryReach = 0.0f;
+	private int[] wide = new int[16];
+	private int numWide = 0;
+	private boolean[] isWide = new boolean[0];
+
+	@Override
+	public void findPairs(ArrayList<Body> bodies, PairBuffer out) {
+		if (!isKnown(bodies)) {
+			rebuild(bodies);
+		}
+
+		swaps = 0;
+		float spreadX = update(bodies, pointsX, valuesX, true);
+		float spreadY = update(bodies, pointsY, valuesY, false);
+		findWide(bodies);
+
+		if (spreadY < spreadX) {
+			sweep(bodies, pointsX, out);
+		} else {
+			sweep(bodies, pointsY, out);
+		}
+	}
+
+	@Override
+	public int query(ArrayList<Body> bodies, float minX, float minY, float maxX, float maxY, int[] out) {
+		if (!isKnown(bodies)) {
+			return BroadPhase.super.query(bodies, minX, minY, maxX, maxY, out);
+		}
+		
+		int found = 0;
+		for (int k = 0; k < numWide; k++) {
+			Body b = bodies.get(wide[k]);
+			if (maxX < b.minX || b.maxX < minX || maxY < b.minY || b.maxY < minY) continue;
+			out[found++] = wide[k];
+		}
+		
+		// Every other body that starts within reach of the box
+		for (int k = firstPoint(minX - queryReach); k < pointsX.length && valuesX[k] <= maxX; k++) {
+			int p = pointsX[k];
+			if ((p & 1) == 1 || isWide[p >> 1]) continue;
+			
+			Body b = bodies.get(p >> 1);
+			if (b.getNumberOfShapes() == 0) continue;
+			if (b.maxX < minX || maxY < b.minY || b.maxY < minY) continue;
+			out[found++] = p >> 1;
+		}
+		return found;
+	}
+	
+	/**
+	 * Returns the number of end point swaps the insertion sort
+	 * needed in the latest call. A low number means the bodies
+	 * moved coherently, which is what this broad phase relies on.
+	 *
+	 * @return the number of swaps in the latest update.
+	 */
+	public int getSwapCount() {
+		return swaps;
+	}
+
+	/**
+	 * Checks if the end points were built for these bodies.
+	 */
+	private boolean isKnown(ArrayList<Body> bodies) {
+		if (known.length != bodies.size()) return false;
+		for (int i = 0; i < known.length; i++) {
+			if (known[i] != bodies.get(i)) return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Creates new end point lists, this only happens when bodies
+	 * are added to or removed from the world.
+	 */
+	private void rebuild(ArrayList<Body> bodies) {
+		int n = bodies.size();
+		known = bodies.toArray(new Body[n]);
+		pointsX = new int[n * 2];
+		pointsY = new int[n * 2];
+		valuesX = new float[n * 2];
+		valuesY = new float[n * 2];
+		activeIndex = new int[n];
+		isWide = new boolean[n];
+		for (int i = 0; i < n * 2; i++) {
+			pointsX[i] = i;
+			pointsY[i] = i;
+		}
+	}
+
+	/**
+	 * Reads the bounds of the bodies into the end points and sorts them.
+	 *
+	 * @return how spread out the bodies are along the axis.
+	 */
+	private float update(ArrayList<Body> bodies, int[] points, float[] values, boolean xAxis) {
+		float min = Float.MAX_VALUE;
+		float max = -Float.MAX_VALUE;
+		for (int i = 0; i < points.length; i++) {
+			int p = points[i];
+			Body b = bodies.get(p >> 1);
+			if (b.getNumberOfShapes() == 0) {
+				// Keep it out of the way
+				values[i] = Float.MAX_VALUE;
+				continue;
+			}
+
+			if ((p & 1) == 0) {
+				values[i] = xAxis ? b.minX : b.minY;
+			} else {
+				values[i] = xAxis ? b.maxX : b.maxY;
+			}
+
+			float center = xAxis ? b.minX + b.maxX : b.minY + b.maxY;
+			min = Math.min(min, center);
+			max = Math.max(max, center);
+		}
+
+		// Insertion sort, fast since it is almost sorted
+		for (int i = 1; i < points.length; i++) {
+			int p = points[i];
+			float v = values[i];
+			int j = i - 1;
+			while (0 <= j && comesAfter(points[j], values[j], p, v)) {
+				points[j + 1] = points[j];
+				values[j + 1] = values[j];
+				j--;
+				swaps++;
+			}
+			points[j + 1] = p;
+			values[j + 1] = v;
+		}
+
+		return max - min;
+	}
+
+	/**
+	 * Finds the bodies that are more than four times as wide as the
+	 * average body, and sets the reach of the queries to that width.
+	 */
+	private void findWide(ArrayList<Body> bodies) {
+		float total = 0.0f;
+		int count = 0;
+		for (int i = 0; i < bodies.size(); i++) {
+			Body b = bodies.get(i);
+			if (b.getNumberOfShapes() == 0) continue;
+			total += b.maxX - b.minX;
+			count++;
+		}
+		queryReach = count == 0 ? 0.0f : total / count * 4.0f;
+
+		numWide = 0;
+		for (int i = 0; i < bodies.size(); i++) {
+			Body b = bodies.get(i);
+			isWide[i] = b.getNumberOfShapes() != 0 && queryReach < b.maxX - b.minX;
+			if (!isWide[i]) continue;
+			if (numWide == wide.length) {
+				wide = Arrays.copyOf(wide, numWide * 2);
+			}
+			wide[numWide++] = i;
+		}
+	}
+
+	/**
+	 * Finds the first end point along the x axis at or after the value.
+	 *
+	 * @return the index of the end point, or the number of end points if there is none.
+	 */
+	private int firstPoint(float value) {
+		int low = 0;
+		int high = pointsX.length;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (valuesX[mid] < value) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * Orders the end points by value. Min points come before max
+	 * points at the same value, so touching bounds count as overlapping.
+	 */
+	private boolean comesAfter(int p, float v, int q, float w) {
+		if (v != w) return v > w;
+		return (p & 1) > (q & 1);
+	}
+
+	/**
+	 * Sweeps along the sorted end points and reports every pair
+	 * whose bounds overlap.
+	 */
+	private void sweep(ArrayList<Body> bodies, int[] points, PairBuffer out) {
+		numActive = 0;
+		Arrays.fill(activeIndex, -1);
+
+		for (int k = 0; k < points.length; k++) {
+			int p = points[k];
+			int i = p >> 1;
+			Body a = bodies.get(i);
+
+			if ((p & 1) == 1) {
+				// Leaving the body, swap remove it
+				int index = activeIndex[i];
+				if (index == -1) continue;
+				int last = active[--numActive];
+				active[index] = last;
+				activeIndex[last] = index;
+				activeIndex[i] = -1;
+				continue;
+			}
+
+			if (a.getNumberOfShapes() == 0) continue;
+
+			for (int n = 0; n < numActive; n++) {
+				int j = active[n];
+				Body b = bodies.get(j);
+				if (!out.check(a, b)) continue;
+				if (!a.boundsOverlap(b)) continue;
+				out.add(i, j);
+			}
+
+			if (numActive == active.length) {
+				active = Arrays.copyOf(active, numActive * 2);
+			}
+			activeIndex[i] = numActive;
+			active[numActive++] = i;
+		}
+	}
+}
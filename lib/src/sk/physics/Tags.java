@@ -0,0 +1,74 @@
+package sk.physics;
+
+import java.util.HashMap;
+
+/**
+ * Hands out a bit for every tag, so the tags of a body can be
+ * stored as a mask and compared without touching any strings.
+ * The bits are shared by all worlds and never change once they
+ * have been handed out.
+ * <p>
+ * There is room for 32 different tags. The empty tag has no bit.
+ * </p>
+ *
+ * @author Ed
+ *
+ */
+public final class Tags {
+
+	// The bits handed out so far
+	private static final HashMap<String, Integer> bits = new HashMap<String, Integer>();
+	private static final String[] names = new String[32];
+	private static int next = 0;
+
+	private Tags() {}
+
+	/**
+	 * Returns the bit of the tag, handing out a new one the
+	 * first time the tag is seen.
+	 *
+	 * @param tag the tag to look up.
+	 * @return the bit of the tag, or 0 for an empty or null tag.
+	 * @throws IllegalStateException if all 32 bits have been handed out.
+	 */
+	public static synchronized int bit(String tag) {
+		if (tag == null || tag.isEmpty()) return 0;
+		
+		Integer bit = bits.get(tag);
+		if (bit != null) return bit;
+		
+		if (next == names.length) {
+			throw new IllegalStateException("Too many tags, there is only room for " + names.length + ".");
+		}
+		names[next] = tag;
+		bit = 1 << next++;
+		bits.put(tag, bit);
+		return bit;
+	}
+
+	/**
+	 * Combines the bits of several tags into one mask.
+	 *
+	 * @param tags the tags to combine.
+	 * @return the mask with the bits of all the tags.
+	 * @throws IllegalStateException if all 32 bits have been handed out.
+	 */
+	public static int mask(String... tags) {
+		int mask = 0;
+		for (String tag : tags) {
+			mask |= bit(tag);
+		}
+		return mask;
+	}
+
+	/**
+	 * Returns the tag that was given the bit.
+	 *
+	 * @param bit a single bit.
+	 * @return the tag, or null if the bit hasn't been handed out.
+	 */
+	public static synchronized String name(int bit) {
+		if (Integer.bitCount(bit) != 1) return null;
+		return names[Integer.numberOfTrailingZeros(bit)];
+	}
+}
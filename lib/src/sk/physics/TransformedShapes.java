@@ -0,0 +1,301 @@
+package sk.physics;
+
+import java.util.ArrayList;
+
+import sk.gfx.Transform;
+
+/**
+ * The shapes of a body, scaled and rotated by the transform of
+ * the body and stored in flat float arrays. The points are stored
+ * relative to the center of their shape, so moving the body
+ * doesn't change them, only scaling and rotating it does.
+ * <p>
+ * This lets the collision test project shapes with plain float
+ * loops, instead of transforming every point for every axis.
+ * </p>
+ * <p>
+ * Static bodies are also baked, their world space centers, broad
+ * phase radii and bounds are stored as well. Nothing is recalculated
+ * until the transform actually changes, like when a door moves.
+ * </p>
+ * 
+ * @author Ed
+ *
+ */
+class TransformedShapes {
+	
+	// Points and normals as x, y pairs
+	float[] points = new float[16];
+	float[] normals = new float[16];
+	
+	// Where each shape starts in the arrays, counted in pairs.
+	// Shape i ends where shape i + 1 starts.
+	int[] pointStart = new int[2];
+	int[] normalStart = new int[2];
+	
+	// The scaled radius of each circle and capsule, 0 for polygons
+	float[] rounding = new float[2];
+	
+	// The box around each shape relative to its center, as min x, min y,
+	// max x, max y. Moving only moves the box, so it's kept until the
+	// scale or rotation changes.
+	float[] extents = new float[8];
+	
+	// Only up to date if the geometry is baked
+	float[] centers = new float[4];
+	float[] radii = new float[2];
+	float minX, minY, maxX, maxY;
+	boolean baked = false;
+	
+	// What the geometry was calculated for
+	private boolean valid = false;
+	private int version;
+	private float x, y, rotation, scaleX, scaleY;
+	
+	/**
+	 * Transforms all the shapes with the current scale and rotation
+	 * of the transform. Nothing is done if the transform hasn't
+	 * changed since the last update.
+	 * 
+	 * @param shapes the shapes of the body.
+	 * @param t the transform of the body.
+	 * @param bake if the world space data should be baked as well.
+	 * @param shapeVersion changes whenever shapes are added or removed.
+	 */
+	void update(ArrayList<Shape> shapes, Transform t, boolean bake, int shapeVersion) {
+		boolean shaped = valid && version == shapeVersion &&
+				rotation == t.rotation && scaleX == t.scale.x && scaleY == t.scale.y;
+		boolean moved = x != t.position.x || y != t.position.y;
+		
+		if (shaped && baked == bake && !(bake && moved)) return;
+		
+		if (!shaped) {
+			transform(shapes, t);
+		}
+		
+		baked = bake;
+		if (bake) {
+			bake(shapes, t);
+		}
+		
+		valid = true;
+		version = shapeVersion;
+		x = t.position.x;
+		y = t.position.y;
+		rotation = t.rotation;
+		scaleX = t.scale.x;
+		scaleY = t.scale.y;
+	}
+	
+	/**
+	 * Forgets what the geometry was calculated for, so the
+	 * next update recalculates everything.
+	 */
+	void invalidate() {
+		valid = false;
+	}
+	
+	/**
+	 * Scales and rotates the points and normals.
+	 */
+	private void transform(ArrayList<Shape> shapes, Transform t) {
+		int numShapes = shapes.size();
+		if (pointStart.length < numShapes + 1) {
+			pointStart = new int[numShapes + 1];
+			normalStart = new int[numShapes + 1];
+			rounding = new float[numShapes + 1];
+		}
+		
+		int numPoints = 0;
+		int numNormals = 0;
+		for (int i = 0; i < numShapes; i++) {
+			pointStart[i] = numPoints;
+			normalStart[i] = numNormals;
+			numPoints += shapes.get(i).points.length;
+			numNormals += shapes.get(i).normals.length;
+		}
+		pointStart[numShapes] = numPoints;
+		normalStart[numShapes] = numNormals;
+		
+		if (points.length < numPoints * 2) {
+			points = new float[numPoints * 4];
+		}
+		if (normals.length < numNormals * 2) {
+			normals = new float[numNormals * 4];
+		}
+		if (extents.length < numShapes * 4) {
+			extents = new float[numShapes * 8];
+		}
+		
+		// The same math as Vector2f.rotate, so the results match exactly
+		double cos = Math.cos(t.rotation);
+		double sin = Math.sin(t.rotation);
+		for (int i = 0; i < numShapes; i++) {
+			Shape s = shapes.get(i);
+			rounding[i] = s.getRadius(t);
+			int p = pointStart[i] * 2;
+			float minX = Float.MAX_VALUE;
+			float minY = Float.MAX_VALUE;
+			float maxX = -Float.MAX_VALUE;
+			float maxY = -Float.MAX_VALUE;
+			for (int j = 0; j < s.points.length; j++) {
+				float x = s.points[j].x * t.scale.x;
+				float y = s.points[j].y * t.scale.y;
+				float rx = (float) (x * cos - y * sin);
+				float ry = (float) (x * sin + y * cos);
+				points[p++] = rx;
+				points[p++] = ry;
+				minX = Math.min(minX, rx);
+				minY = Math.min(minY, ry);
+				maxX = Math.max(maxX, rx);
+				maxY = Math.max(maxY, ry);
+			}
+			extents[i * 4 + 0] = minX - rounding[i];
+			extents[i * 4 + 1] = minY - rounding[i];
+			extents[i * 4 + 2] = maxX + rounding[i];
+			extents[i * 4 + 3] = maxY + rounding[i];
+			
+			int n = normalStart[i] * 2;
+			for (int j = 0; j < s.normals.length; j++) {
+				float x = s.normals[j].x;
+				float y = s.normals[j].y;
+				normals[n++] = (float) (x * cos - y * sin);
+				normals[n++] = (float) (x * sin + y * cos);
+			}
+		}
+	}
+	
+	/**
+	 * Stores the world space centers, radii and the bounds around
+	 * the boxes of all the shapes.
+	 */
+	private void bake(ArrayList<Shape> shapes, Transform t) {
+		int numShapes = shapes.size();
+		if (radii.length < numShapes) {
+			radii = new float[numShapes * 2];
+			centers = new float[numShapes * 4];
+		}
+		
+		minX = minY = Float.MAX_VALUE;
+		maxX = maxY = -Float.MAX_VALUE;
+		for (int i = 0; i < numShapes; i++) {
+			Shape s = shapes.get(i);
+			float r = s.getBP(t);
+			float x = s.getCenterX(t);
+			float y = s.getCenterY(t);
+			radii[i] = r;
+			centers[i * 2 + 0] = x;
+			centers[i * 2 + 1] = y;
+			minX = Math.min(minX, x + extents[i * 4 + 0]);
+			minY = Math.min(minY, y + extents[i * 4 + 1]);
+			maxX = Math.max(maxX, x + extents[i * 4 + 2]);
+			maxY = Math.max(maxY, y + extents[i * 4 + 3]);
+		}
+	}
+	
+	/**
+	 * Returns the x coordinate of the world space center of a shape.
+	 * 
+	 * @param i the index of the shape.
+	 * @param s the shape.
+	 * @param t the transform of the body.
+	 * @return the x coordinate of the center.
+	 */
+	float getCenterX(int i, Shape s, Transform t) {
+		return baked ? centers[i * 2] : s.getCenterX(t);
+	}
+	
+	/**
+	 * Returns the y coordinate of the world space center of a shape.
+	 * 
+	 * @param i the index of the shape.
+	 * @param s the shape.
+	 * @param t the transform of the body.
+	 * @return the y coordinate of the center.
+	 */
+	float getCenterY(int i, Shape s, Transform t) {
+		return baked ? centers[i * 2 + 1] : s.getCenterY(t);
+	}
+	
+	/**
+	 * Returns the broad phase radius of a shape.
+	 * 
+	 * @param i the index of the shape.
+	 * @param s the shape.
+	 * @param t the transform of the body.
+	 * @return the broad phase radius.
+	 */
+	float getBP(int i, Shape s, Transform t) {
+		return baked ? radii[i] : s.getBP(t);
+	}
+	
+	/**
+	 * Returns the left edge of the world space box around a shape.
+	 * 
+	 * @param i the index of the shape.
+	 * @param s the shape.
+	 * @param t the transform of the body.
+	 * @return the left edge of the box.
+	 */
+	float getMinX(int i, Shape s, Transform t) {
+		return getCenterX(i, s, t) + extents[i * 4 + 0];
+	}
+	
+	/**
+	 * Returns the bottom edge of the world space box around a shape.
+	 * 
+	 * @param i the index of the shape.
+	 * @param s the shape.
+	 * @param t the transform of the body.
+	 * @return the bottom edge of the box.
+	 */
+	float getMinY(int i, Shape s, Transform t) {
+		return getCenterY(i, s, t) + extents[i * 4 + 1];
+	}
+	
+	/**
+	 * Returns the right edge of the world space box around a shape.
+	 * 
+	 * @param i the index of the shape.
+	 * @param s the shape.
+	 * @param t the transform of the body.
+	 * @return the right edge of the box.
+	 */
+	float getMaxX(int i, Shape s, Transform t) {
+		return getCenterX(i, s, t) + extents[i * 4 + 2];
+	}
+	
+	/**
+	 * Returns the top edge of the world space box around a shape.
+	 * 
+	 * @param i the index of the shape.
+	 * @param s the shape.
+	 * @param t the transform of the body.
+	 * @return the top edge of the box.
+	 */
+	float getMaxY(int i, Shape s, Transform t) {
+		return getCenterY(i, s, t) + extents[i * 4 + 3];
+	}
+	
+	/**
+	 * Checks if the boxes around two shapes overlap. Shapes whose
+	 * boxes only touch can't overlap either.
+	 * 
+	 * @param ga the geometry of the first shape.
+	 * @param i the index of the first shape.
+	 * @param ax the x coordinate of the center of the first shape.
+	 * @param ay the y coordinate of the center of the first shape.
+	 * @param gb the geometry of the second shape.
+	 * @param j the index of the second shape.
+	 * @param bx the x coordinate of the center of the second shape.
+	 * @param by the y coordinate of the center of the second shape.
+	 * @return true if the boxes overlap.
+	 */
+	static boolean boxesOverlap(TransformedShapes ga, int i, float ax, float ay,
+			TransformedShapes gb, int j, float bx, float by) {
+		float[] ea = ga.extents;
+		float[] eb = gb.extents;
+		return bx + eb[j * 4 + 0] < ax + ea[i * 4 + 2] && ax + ea[i * 4 + 0] < bx + eb[j * 4 + 2] &&
+			   by + eb[j * 4 + 1] < ay + ea[i * 4 + 3] && ay + ea[i * 4 + 1] < by + eb[j * 4 + 3];
+	}
+}
@@ -0,0 +1,24 @@
+package sk.physics;
+
+/**
+ * A static trigger with a tag. Triggers are never solved, the world
+ * only checks what overlaps them, which makes them cheap enough to
+ * have a lot of. Set it to dynamic if it should move with velocity.
+ * 
+ * @author Ed
+ *
+ */
+public class TriggerBody extends Body {
+
+	/**
+	 * Creates a new static trigger.
+	 * 
+	 * @param tag the tag of the trigger.
+	 * @param shapes the shapes of the trigger.
+	 */
+	public TriggerBody(String tag, Shape... shapes) {
+		super(false, 0.0f, 0.0f, shapes);
+		setTrigger(true);
+		setTag(tag);
+	}
+}
@@ -1,6 +1,8 @@
 package sk.physics;
 
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
 
 import sk.entity.Entity;
 import sk.gfx.Transform;
@@ -17,11 +19,114 @@ public class World {
 	
 	// Recommended is 1 / 60
 	public float stepLength = 1.0f / 60.0f;
+	
+	// The most steps a single update may take
+	public int maxSubsteps = 8;
+	
+	// The most time in seconds a single update may spend, 0 means no limit.
+	// Steps are cut down first, and only then is time dropped
+	public float budget = 0.0f;
+	
+	// What the latest update did, and roughly how long a full and a cut down step take
+	private PhysicsStats stats = new PhysicsStats();
+	private long fullStepNanos = 0;
+	private long degradedStepNanos = 0;
 
 	ArrayList<Body> bodies = new ArrayList<Body>();
 	public Vector2f gravity = new Vector2f(0.0f, -0.5f);
+	
+	// How close to straight up the normal has to be for a body to
+	// ride a kinematic body, 1 is straight up and 0 is to the side
+	public float rideSlope = 0.5f;
+	
+	// How much of the previous impulse the solver starts with,
+	// 0 turns warm starting off and 1 reuses all of it
+	public float warmStarting = 0.0f;
+	
+	// Pairs of shapes with more points than this together are tested
+	// with GJK instead of SAT, which is faster for detailed shapes
+	public int gjkPoints = 16;
+	
+	// Bodies slower than this for sleepSteps steps in a row fall asleep,
+	// a sleepSteps of 0 turns sleeping off
+	public float sleepVelocity = 0.05f;
+	public int sleepSteps = 0;
 	private float timer = 0.0f;
 	
+	// Bodies further than lodRadius from every focus are only stepped every
+	// second step, and further than twice that every fourth step, with
+	// longer steps to keep up. A lodRadius of 0 turns it off
+	public float lodRadius = 0.0f;
+	private ArrayList<Transform> focus = new ArrayList<Transform>();
+	private int stepCount = 0;
+	
+	// Where the foci were at the start of the update, as x and y pairs,
+	// and if a worker already copied them before it took the world
+	private float[] focusPositions = new float[0];
+	private int focusCount = 0;
+	private boolean focusCopied = false;
+	
+	// The lowest rate, and the most steps a body catches up on in this step
+	private static final int MAX_RATE = 4;
+	private int maxElapsed = 1;
+	
+	// Finds the pairs that might be colliding
+	private BroadPhase broadPhase = new BruteForce();
+	private PairBuffer pairs = new PairBuffer();
+	
+	// Remembers separating axes and impulses between steps
+	private ContactCache contacts = new ContactCache();
+	
+	// Tells the listeners when pairs of bodies start and stop touching
+	private ContactTracker tracker = new ContactTracker();
+	private ArrayList<ContactListener> listeners = new ArrayList<ContactListener>();
+	private ArrayList<Integer> listenerTags = new ArrayList<Integer>();
+	private ContactEvent event = new ContactEvent();
+	
+	// What the trigger being tested overlapped in the previous step,
+	// and the collision handed to the bodies for each overlap
+	private ArrayList<Body> previousOverlaps = new ArrayList<Body>();
+	private Collision overlap = new Collision();
+	private Vector2f overlapNormal = new Vector2f();
+	private Vector2f overlapDistance = new Vector2f();
+	
+	// How the shapes are tested, and the pairs waiting to be tested
+	private NarrowPhase narrowPhase = NarrowPhase.SEQUENTIAL;
+	private ContactBatch batch = new ContactBatch();
+	
+	// The memory GJK works in, so testing detailed shapes creates no garbage
+	private GJK.Scratch gjkScratch = new GJK.Scratch();
+	
+	// The shapes the shape trees found close to the other body
+	private int[] nearA = new int[0];
+	private int[] nearB = new int[0];
+	
+	// The store slots of the awake bodies, and where they are in the body list
+	private int[] slots = new int[0];
+	private int[] awake = new int[0];
+	
+	// The islands, found from the pairs of the previous step
+	private int[] parents = new int[0];
+	private int[] islandStill = new int[0];
+	private int[] islandIds = new int[0];
+	private int[] woken = new int[16];
+	private int nextIsland = 0;
+	
+	// The index of each body in the body list by its slot, for snapshots
+	private int[] bodyIndices = new int[0];
+	
+	// If the pairs still refer to the current body list
+	private boolean pairsValid = false;
+	
+	// Scratch space for the queries, so they don't create garbage
+	private int[] candidates = new int[0];
+	private ArrayList<Shape> queryShapes = new ArrayList<Shape>();
+	private TransformedShapes queryGeometry = new TransformedShapes();
+	private Shape queryBox = new Shape(new Vector2f(-0.5f, -0.5f), new Vector2f(0.5f, -0.5f),
+									   new Vector2f(0.5f, 0.5f), new Vector2f(-0.5f, 0.5f));
+	private Transform queryBoxTransform = new Transform();
+	private Vector2f rayNormal = new Vector2f();
+	
 	/**
 	 * Adds a physics body to this world.
 	 * 
@@ -31,6 +136,7 @@ public class World {
 		// Make sure there's only one of each body
 		if (bodies.contains(body)) return;
 		bodies.add(body);
+		pairsValid = false;
 	}
 	
 	/**
@@ -40,88 +146,1423 @@ public class World {
 	 */
 	public void removeBody(Body body) {
 		bodies.remove(body);
+		// Triggers may keep their overlaps for a step without looking again
+		for (Body t : bodies) {
+			if (t.overlaps != null) t.overlaps.remove(body);
+		}
+		contacts.forget(body);
+		tracker.forget(body);
+		pairsValid = false;
+	}
+	
+	/**
+	 * Adds a listener that is told about every pair of bodies that
+	 * starts, keeps or stops touching.
+	 * 
+	 * @param listener the listener to add.
+	 * @throws IllegalArgumentException if the listener is null.
+	 */
+	public void addContactListener(ContactListener listener) {
+		addContactListener(-1, listener);
+	}
+	
+	/**
+	 * Adds a listener that is told about the pairs of bodies where
+	 * at least one of the bodies has one of the tags. The events
+	 * are handed out at the end of every step, in the order the
+	 * collisions were found.
+	 * 
+	 * @param tags the mask of tags, from {@link Tags#mask(String...)}.
+	 * @param listener the listener to add.
+	 * @throws IllegalArgumentException if the listener is null.
+	 */
+	public void addContactListener(int tags, ContactListener listener) {
+		if (listener == null) {
+			throw new IllegalArgumentException("The listener may not be null.");
+		}
+		listeners.add(listener);
+		listenerTags.add(tags);
+	}
+	
+	/**
+	 * Removes a listener, no matter which tags it was added with.
+	 * 
+	 * @param listener the listener to remove.
+	 */
+	public void removeContactListener(ContactListener listener) {
+		int i = listeners.indexOf(listener);
+		if (i == -1) return;
+		listeners.remove(i);
+		listenerTags.remove(i);
+	}
+	
+	/**
+	 * Adds a focus, like a player or the camera. Bodies close to any
+	 * focus are stepped at the full rate, the ones further away than
+	 * {@link #lodRadius} are stepped less often. Without a focus every
+	 * body is stepped at the full rate.
+	 * <p>
+	 * The position of the focus is copied at the start of every update.
+	 * A {@link WorldWorker} copies it before it takes the world, so the
+	 * focus may be moved by another world while this one is stepped.
+	 * </p>
+	 * 
+	 * @param transform the transform of the focus.
+	 */
+	public void addFocus(Transform transform) {
+		if (!focus.contains(transform)) focus.add(transform);
+	}
+	
+	/**
+	 * Copies the positions of the foci, so the steps don't read the
+	 * transforms while something else might be moving them.
+	 */
+	void copyFocus() {
+		focusCount = focus.size();
+		if (focusPositions.length < focusCount * 2) focusPositions = new float[focusCount * 2];
+		for (int i = 0; i < focusCount; i++) {
+			Vector2f f = focus.get(i).position;
+			focusPositions[i * 2] = f.x;
+			focusPositions[i * 2 + 1] = f.y;
+		}
+		focusCopied = true;
+	}
+	
+	/**
+	 * Removes a focus added with {@link #addFocus(Transform)}.
+	 * 
+	 * @param transform the transform of the focus.
+	 */
+	public void removeFocus(Transform transform) {
+		focus.remove(transform);
+	}
+	
+	/**
+	 * Sets the broad phase used to find the pairs of bodies
+	 * that might be colliding. The default is {@link BruteForce},
+	 * which tests every pair and is useful as a reference when
+	 * comparing results.
+	 * 
+	 * @param broadPhase the new broad phase.
+	 * @throws IllegalArgumentException if the broad phase is null.
+	 */
+	public void setBroadPhase(BroadPhase broadPhase) {
+		if (broadPhase == null) {
+			throw new IllegalArgumentException("The broad phase may not be null.");
+		}
+		this.broadPhase = broadPhase;
+	}
+	
+	/**
+	 * Returns the broad phase used to find the pairs of bodies
+	 * that might be colliding.
+	 * 
+	 * @return the broad phase.
+	 */
+	public BroadPhase getBroadPhase() {
+		return broadPhase;
+	}
+	
+	/**
+	 * Sets how the pairs of shapes are tested. The default is
+	 * {@link NarrowPhase#SEQUENTIAL}. The batched modes test all
+	 * pairs against the positions at the start of the step, so they
+	 * don't give the same result as the default, but they always give
+	 * the same result as each other.
+	 * 
+	 * @param narrowPhase the new narrow phase mode.
+	 * @throws IllegalArgumentException if the mode is null.
+	 */
+	public void setNarrowPhase(NarrowPhase narrowPhase) {
+		if (narrowPhase == null) {
+			throw new IllegalArgumentException("The narrow phase may not be null.");
+		}
+		this.narrowPhase = narrowPhase;
+	}
+	
+	/**
+	 * Returns how the pairs of shapes are tested.
+	 * 
+	 * @return the narrow phase mode.
+	 */
+	public NarrowPhase getNarrowPhase() {
+		return narrowPhase;
+	}
+	
+	/**
+	 * Returns the number of dynamic bodies that are awake.
+	 * 
+	 * @return the number of awake bodies.
+	 */
+	public int getAwakeCount() {
+		int count = 0;
+		for (Body b : bodies) {
+			if (b.isDynamic() && !b.isSleeping()) count++;
+		}
+		return count;
+	}
+	
+	/**
+	 * Returns the number of bodies that are sleeping.
+	 * 
+	 * @return the number of sleeping bodies.
+	 */
+	public int getSleepingCount() {
+		int count = 0;
+		for (Body b : bodies) {
+			if (b.isSleeping()) count++;
+		}
+		return count;
+	}
+	
+	/**
+	 * Returns the number of bodies that are stepped at a lower
+	 * rate, since they are far from every focus.
+	 * 
+	 * @return the number of bodies stepped at a lower rate.
+	 */
+	public int getReducedCount() {
+		int count = 0;
+		for (Body b : bodies) {
+			if (1 < b.rate) count++;
+		}
+		return count;
+	}
+	
+	/**
+	 * Returns what the world did in its latest update. The same
+	 * object is returned every time, and it is filled in again
+	 * by every update.
+	 * 
+	 * @return the stats of the world.
+	 */
+	public PhysicsStats getStats() {
+		return stats;
+	}
+	
+	/**
+	 * Returns the number of pairs the broad phase reported
+	 * in the latest step.
+	 * 
+	 * @return the number of pairs that were tested.
+	 */
+	public int getPairCount() {
+		return pairs.size();
 	}
 	
 	/**
 	 * Updates the world, checks for collisions and
 	 * steps forward through the simulation.
+	 * <p>
+	 * At most {@link #maxSubsteps} steps are taken, if the world has
+	 * fallen further behind than that the rest of the time is dropped.
+	 * Afterwards the transforms of the bodies are told how far towards
+	 * the next step the world is, even if no step was taken, and where
+	 * they were before the latest step, so they can be drawn in between.
+	 * </p>
+	 * <p>
+	 * With a {@link #budget}, each step is only taken in full if it is
+	 * expected to fit in the time that is left. Otherwise a cheaper
+	 * step is taken, which leaves sleeping alone and lets the triggers
+	 * keep what they overlapped in the previous step. Time is only
+	 * dropped when not even that fits, and the first step is always
+	 * taken. What happened is written to {@link #getStats()}.
+	 * </p>
 	 * 
 	 * @param delta the time passed since the previous frame.
 	 */
 	public void update(double delta) {
+		long start = System.nanoTime();
+		long budgetNanos = (long) (budget * 1.0e9);
+		stats.beginUpdate();
+		if (!focusCopied) copyFocus();
+		focusCopied = false;
+		BodyStore.SHARED.beginStep();
+		try {
+			updateSteps(delta, start, budgetNanos);
+		} finally {
+			BodyStore.SHARED.endStep();
+		}
+		stats.updateNanos = System.nanoTime() - start;
+	}
+	
+	/**
+	 * Takes the steps of an update, and interpolates.
+	 */
+	private void updateSteps(double delta, long start, long budgetNanos) {
 		timer += delta;
 		// Make sure we only step if we need to
+		int steps = 0;
 		while (stepLength < timer) {
-			timer -= stepLength;
-			// Update all bodies
-			Vector2f deltaGravity = (Vector2f) gravity.clone().scale((float) stepLength);
-			for (Body a : bodies) {
-				if (a.isDynamic())
-					a.addVelocity(deltaGravity);
-				a.step(stepLength);
+			if (maxSubsteps <= steps) {
+				// Too far behind, catching up would only make it worse
+				dropTime();
+				break;
 			}
 			
-			// Check for collisions
+			boolean degraded = false;
+			if (0 < budgetNanos) {
+				long elapsed = System.nanoTime() - start;
+				if (budgetNanos < elapsed + fullStepNanos) {
+					if (0 < steps && budgetNanos < elapsed + degradedStepNanos) {
+						dropTime();
+						break;
+					}
+					degraded = true;
+				}
+			}
+			timer -= stepLength;
+			steps++;
+			
+			long before = System.nanoTime();
+			step(degraded);
+			long cost = System.nanoTime() - before;
+			if (degraded) {
+				degradedStepNanos += (cost - degradedStepNanos) / 4;
+				// Forget the cost of a full step slowly, so one is tried again
+				fullStepNanos -= fullStepNanos / 64;
+			} else {
+				fullStepNanos += (cost - fullStepNanos) / 4;
+			}
+		}
+		
+		// Frames without a step still move the bodies towards the next step
+		interpolate(0 < steps);
+	}
+	
+	/**
+	 * Drops the time the world is behind, keeping what is
+	 * left over towards the next step.
+	 */
+	private void dropTime() {
+		stats.countDropped((int) (timer / stepLength));
+		timer %= stepLength;
+	}
+	
+	/**
+	 * Steps the simulation forward a fixed number of steps, ignoring
+	 * the time and the substep budget. Useful for letting things settle
+	 * when a level is loaded.
+	 * 
+	 * @param steps the number of steps to take.
+	 */
+	public void step(int steps) {
+		stats.beginUpdate();
+		if (!focusCopied) copyFocus();
+		focusCopied = false;
+		BodyStore.SHARED.beginStep();
+		try {
+			for (int i = 0; i < steps; i++) {
+				step(false);
+			}
+			interpolate(true);
+		} finally {
+			BodyStore.SHARED.endStep();
+		}
+	}
+	
+	/**
+	 * Returns how far the world has come towards the next step,
+	 * where 0 is right after a step and 1 is right before the next.
+	 * 
+	 * @return the time left over after the latest step, divided by the step length.
+	 */
+	public float getAlpha() {
+		return Math.min(timer / stepLength, 1.0f);
+	}
+	
+	/**
+	 * Returns how many bytes {@link #snapshot(ByteBuffer)} would write
+	 * right now. It changes as bodies are added and removed, and with
+	 * the number of pairs and overlaps.
+	 * 
+	 * @return the size of a snapshot in bytes.
+	 */
+	public int getSnapshotSize() {
+		int size = 4 + 4 + 4 + 4 + bodies.size() * Body.SNAPSHOT_BYTES + 4;
+		if (pairsValid) size += pairs.size() * 8;
+		for (Body b : bodies) {
+			if (!b.isTrigger()) continue;
+			size += 4 + (b.overlaps == null ? 0 : b.overlaps.size() * 4);
+		}
+		return size + contacts.getSnapshotSize();
+	}
+	
+	/**
+	 * Writes the state of the world to the buffer, so it can be set
+	 * back with {@link #restore(ByteBuffer)}. That is the position,
+	 * rotation, scale, velocity and forces of every body, along with
+	 * its flags and layer, how long it has been still and the time
+	 * the world has left over towards the next step. Everything is
+	 * written as plain numbers in a fixed order, so it is cheap enough
+	 * to do every step.
+	 * <p>
+	 * The contacts remembered between steps are included, with their
+	 * separating axes and the impulses used for warm starting.
+	 * </p>
+	 * 
+	 * @param buffer the buffer to write to, with at least
+	 * {@link #getSnapshotSize()} bytes remaining.
+	 */
+	public void snapshot(ByteBuffer buffer) {
+		BodyStore store = BodyStore.SHARED;
+		buffer.putInt(bodies.size());
+		buffer.putFloat(timer);
+		buffer.putInt(stepCount);
+		buffer.putInt(nextIsland);
+		for (int i = 0; i < bodies.size(); i++) {
+			bodies.get(i).snapshot(buffer);
+		}
+		
+		// The islands are found from the pairs of the previous step
+		if (pairsValid) {
+			buffer.putInt(pairs.size());
+			for (int i = 0; i < pairs.size(); i++) {
+				buffer.putInt(pairs.getA(i));
+				buffer.putInt(pairs.getB(i));
+			}
+		} else {
+			buffer.putInt(-1);
+		}
+		
+		// What each trigger overlapped, by the index of the body
+		if (bodyIndices.length < store.flags.length) bodyIndices = new int[store.flags.length];
+		for (int i = 0; i < bodies.size(); i++) {
+			bodyIndices[bodies.get(i).slot] = i;
+		}
+		for (int i = 0; i < bodies.size(); i++) {
+			Body t = bodies.get(i);
+			if (!t.isTrigger()) continue;
+			int n = t.overlaps == null ? 0 : t.overlaps.size();
+			buffer.putInt(n);
+			for (int k = 0; k < n; k++) {
+				buffer.putInt(bodyIndices[t.overlaps.get(k).slot]);
+			}
+		}
+		
+		contacts.snapshot(buffer, bodies, bodyIndices);
+	}
+	
+	/**
+	 * Sets the world back to a snapshot from {@link #snapshot(ByteBuffer)}.
+	 * The world has to have the same bodies, in the same order, as
+	 * when the snapshot was taken. Stepping after restoring gives
+	 * exactly the same result as stepping after the snapshot was taken.
+	 * 
+	 * @param buffer the buffer to read from.
+	 * @throws IllegalArgumentException if the snapshot has a different number of bodies.
+	 */
+	public void restore(ByteBuffer buffer) {
+		int count = buffer.getInt(buffer.position());
+		if (count != bodies.size()) {
+			throw new IllegalArgumentException("The snapshot has " + count
+					+ " bodies, but the world has " + bodies.size() + ".");
+		}
+		
+		BodyStore.SHARED.beginStep();
+		try {
+			restoreState(buffer);
+		} finally {
+			BodyStore.SHARED.endStep();
+		}
+	}
+	
+	/**
+	 * Reads everything but the number of bodies from a snapshot.
+	 */
+	private void restoreState(ByteBuffer buffer) {
+		buffer.getInt();
+		timer = buffer.getFloat();
+		stepCount = buffer.getInt();
+		nextIsland = buffer.getInt();
+		for (int i = 0; i < bodies.size(); i++) {
+			bodies.get(i).restore(buffer);
+		}
+		
+		pairs.clear();
+		int numPairs = buffer.getInt();
+		pairsValid = numPairs != -1;
+		for (int i = 0; i < numPairs; i++) {
+			int a = buffer.getInt();
+			pairs.add(a, buffer.getInt());
+		}
+		
+		for (int i = 0; i < bodies.size(); i++) {
+			Body t = bodies.get(i);
+			if (!t.isTrigger()) {
+				if (t.overlaps != null) t.overlaps.clear();
+				continue;
+			}
+			if (t.overlaps == null) t.overlaps = new ArrayList<Body>();
+			t.overlaps.clear();
+			t.overlapMinX = Float.NaN;
+			int n = buffer.getInt();
+			for (int k = 0; k < n; k++) {
+				t.overlaps.add(bodies.get(buffer.getInt()));
+			}
+		}
+		
+		contacts.restore(buffer, bodies);
+		interpolate(true);
+	}
+	
+	/**
+	 * Takes a single step.
+	 * 
+	 * @param degraded if the step should be cut down to save time.
+	 */
+	private void step(boolean degraded) {
+		stats.countStep(degraded);
+		stats.mark();
+		
+		// Update all bodies, sleeping can wait for a full step
+		if (0 < sleepSteps && !degraded) {
+			updateSleep();
+		}
+		updateRates();
+		integrate();
+		for (Body a : bodies) {
+			a.clearCollisions();
+			a.updateGeometry();
+		}
+		sweepBullets();
+		if (stats.enabled) stats.integrateNanos += stats.lap();
+		
+		// Find the pairs that might be colliding
+		contacts.nextStep();
+		tracker.nextStep();
+		pairs.counting = stats.enabled;
+		findPairs();
+		pairsValid = true;
+		if (stats.enabled) {
+			stats.broadPhaseNanos += stats.lap();
+			stats.candidatePairs += pairs.candidates;
+			stats.layerFiltered += pairs.layerFiltered;
+			stats.broadPhaseRejects += pairs.candidates - pairs.size();
+			stats.pairs += pairs.size();
+		}
+		
+		// Triggers only look for overlaps, they never reach the solver
+		findOverlaps(!degraded);
+		if (stats.enabled) stats.narrowPhaseNanos += stats.lap();
+		
+		if (warmStarting != 0.0f) {
+			contacts.warmStart(warmStarting);
+		}
+		if (stats.enabled) stats.solveNanos += stats.lap();
+		
+		// Check for collisions, the solving is timed on its own
+		long solving = stats.solveNanos;
+		batch.clear();
+		for (int i = 0; i < pairs.size(); i++) {
+			collide(bodies.get(pairs.getA(i)), bodies.get(pairs.getB(i)));
+		}
+		
+		if (narrowPhase != NarrowPhase.SEQUENTIAL) {
+			// Test everything, then solve in the order the pairs were found
+			batch.findSlots(contacts);
+			batch.test(contacts, narrowPhase == NarrowPhase.PARALLEL, gjkPoints, gjkScratch);
+			for (int i = 0; i < batch.size(); i++) {
+				Collision c = batch.getCollision(i);
+				if (stats.enabled && c != null && batch.usesSAT(i, gjkPoints)) stats.satHits++;
+				resolve(batch.getA(i), batch.getB(i), c, batch.getSlot(i));
+			}
+		}
+		if (stats.enabled) stats.narrowPhaseNanos += stats.lap() - (stats.solveNanos - solving);
+		endStep();
+	}
+	
+	/**
+	 * Cleans up after a step and hands the contact events
+	 * of the step to the listeners.
+	 */
+	private void endStep() {
+		contacts.revertWarmStart();
+		if (listeners.isEmpty()) {
+			tracker.clear();
+			return;
+		}
+		
+		tracker.finish();
+		// Listeners that remove bodies add more events, which are handed out too
+		for (int i = 0; i < tracker.size(); i++) {
+			tracker.get(i, event);
+			int touching = event.a.getTagBits() | event.b.getTagBits();
+			for (int j = 0; j < listeners.size(); j++) {
+				int tags = listenerTags.get(j);
+				if (tags == -1 || (touching & tags) != 0) {
+					listeners.get(j).onContact(event);
+				}
+			}
+		}
+		tracker.clear();
+		event.a = event.b = null;
+		event.collision = null;
+	}
+	
+	/**
+	 * Tells the transforms of the bodies how far towards the next
+	 * step the world is, and where they were before the latest step
+	 * if a step was just taken.
+	 * 
+	 * @param stepped if a step was taken since the last time.
+	 */
+	private void interpolate(boolean stepped) {
+		BodyStore store = BodyStore.SHARED;
+		float alpha = getAlpha();
+		for (Body b : bodies) {
+			if (stepped) {
+				b.getTransform().setInterpolation(store.prevX[b.slot], store.prevY[b.slot], alpha);
+			} else {
+				b.getTransform().setInterpolationAlpha(alpha);
+			}
+		}
+	}
+	
+	/**
+	 * Adds gravity and the forces to the velocities and moves
+	 * all bodies one step. The positions are copied into the
+	 * store, so the integration itself only touches arrays, and
+	 * the positions from before the step are kept for drawing.
+	 */
+	private void integrate() {
+		BodyStore store = BodyStore.SHARED;
+		if (slots.length < bodies.size()) {
+			slots = new int[bodies.size() * 2];
+			awake = new int[bodies.size() * 2];
+		}
+		
+		for (Body b : bodies) {
+			Vector2f position = b.getTransform().position;
+			store.prevX[b.slot] = position.x;
+			store.prevY[b.slot] = position.y;
+		}
+		
+		// Sleeping bodies are skipped, and so are the bodies left out of
+		// this step. Bodies stepped at a lower rate catch up on exactly the
+		// steps they were left out of, so they are grouped by that number
+		for (int elapsed = 1; elapsed <= maxElapsed; elapsed++) {
+			int n = 0;
 			for (int i = 0; i < bodies.size(); i++) {
-				for (int j = 0; j < i; j++) {
-					Body a = bodies.get(i);
-					Body b = bodies.get(j);
-					// Check if they share a layer
-					if (!a.sharesLayer(b)) continue;
-					// Make sure not both are static
-					if (!a.isDynamic() && !b.isDynamic()) continue;
-					// Make sure not both are triggers
-					if (a.isTrigger() && b.isTrigger()) continue;
- 					
-					
-					Collision c = null;
-					// There are multiple shapes, skip the bread phase and try the bodies
-					Transform ta = a.getTransform();
-					Transform tb = b.getTransform();
-					for (Shape shapeA : a.getShapes()) {
-						for (Shape shapeB : b.getShapes()) {
-							float bpRange = (float) Math.pow(
-									shapeA.getBP(ta) + shapeB.getBP(tb), 
-									2.0f);
-							
-							float distanceSq = 
-									shapeA.getCenter(ta)
-									.sub(shapeB.getCenter(tb))
-									.lengthSquared();
-							
-							if (bpRange <= distanceSq) continue;
-							c = Collision.SATtest(shapeA, ta, shapeB, tb);
-							
-							if (c == null) continue;
-							
-							
-							// Skip the collision if the normal is the wrong way
-							if (!b.oneWayCheck(c.collisionDepth, a.getVelocity(), c.normal) || 
-								!a.oneWayCheck(c.collisionDepth, b.getVelocity(), c.normal.clone().negate())) 
-								continue;
-							
-							// Now we sort them
-							if (a.isDynamic()) {
-								c.a = b;
-								c.b = a;
-							} else {
-								c.a = a;
-								c.b = b;
-							}
+				Body b = bodies.get(i);
+				if (b.elapsed != elapsed || b.skipped) continue;
+				b.lastStep = stepCount;
+				if (b.isSleeping()) continue;
+				
+				Vector2f position = b.getTransform().position;
+				int s = b.slot;
+				slots[n] = s;
+				awake[n++] = i;
+				store.posX[s] = position.x;
+				store.posY[s] = position.y;
+			}
+			if (n == 0) continue;
+			
+			float delta = stepLength * elapsed;
+			store.integrate(slots, n, gravity.x * delta, gravity.y * delta, delta);
+			
+			for (int i = 0; i < n; i++) {
+				Vector2f position = bodies.get(awake[i]).getTransform().position;
+				position.x = store.posX[slots[i]];
+				position.y = store.posY[slots[i]];
+			}
+		}
+	}
+	
+	/**
+	 * Works out how often each body is stepped from how far it is
+	 * from the closest focus, and which bodies are left out of this
+	 * step. Bodies that come closer are stepped at the higher rate
+	 * right away. The bodies that are left out are spread over the
+	 * steps by their slots, so each step does about the same work.
+	 * <p>
+	 * A body is always moved by the steps since it was last moved, so
+	 * changing the rate never gains or loses time. A body that has been
+	 * left out of as many steps as its rate is moved no matter the slot.
+	 * Bodies that are new to the world, or were last moved by another
+	 * world, are moved by one step.
+	 * </p>
+	 */
+	private void updateRates() {
+		stepCount++;
+		maxElapsed = 1;
+		boolean reduce = 0.0f < lodRadius && 0 < focusCount;
+		float near = lodRadius * lodRadius;
+		for (Body b : bodies) {
+			int rate = 1;
+			if (reduce && canReduce(b)) {
+				float distance = focusDistanceSquared(b.getTransform().position);
+				if (near * 4.0f < distance) {
+					rate = MAX_RATE;
+				} else if (near < distance) {
+					rate = 2;
+				}
+			}
+			int elapsed = stepCount - b.lastStep;
+			if (elapsed < 1 || MAX_RATE < elapsed) elapsed = 1;
+			
+			b.rate = rate;
+			b.skipped = elapsed < rate && (stepCount + b.slot) % rate != 0;
+			if (!b.skipped) {
+				b.elapsed = elapsed;
+				maxElapsed = Math.max(maxElapsed, elapsed);
+			}
+		}
+	}
+	
+	/**
+	 * Returns the squared distance to the closest focus.
+	 */
+	private float focusDistanceSquared(Vector2f position) {
+		float min = Float.MAX_VALUE;
+		for (int i = 0; i < focusCount; i++) {
+			float x = position.x - focusPositions[i * 2];
+			float y = position.y - focusPositions[i * 2 + 1];
+			min = Math.min(min, x * x + y * y);
+		}
+		return min;
+	}
+	
+	/**
+	 * Checks if the body may be stepped at a lower rate. Only bodies
+	 * the world moves are, triggers are left at the full rate so they
+	 * never miss anything.
+	 */
+	private static boolean canReduce(Body b) {
+		return (b.isDynamic() || b.isKinematic()) && !b.isTrigger();
+	}
+	
+	/**
+	 * Stops bullets that passed through something during the step
+	 * at the first thing they hit. They are left slightly overlapping
+	 * it, so the normal collision checks solve the contact.
+	 * One way bodies are not swept against, since passing through
+	 * them is allowed.
+	 */
+	private void sweepBullets() {
+		BodyStore store = BodyStore.SHARED;
+		boolean boundsReady = false;
+		
+		for (Body a : bodies) {
+			if (!a.isBullet() || a.isSleeping() || !a.isDynamic() || a.isTrigger()) continue;
+			if (a.getNumberOfShapes() == 0) continue;
+			
+			Vector2f position = a.getTransform().position;
+			float dax = position.x - store.prevX[a.slot];
+			float day = position.y - store.prevY[a.slot];
+			float distance = dax * dax + day * day;
+			
+			// Bodies moving less than half their size can't pass through anything
+			float size = Float.MAX_VALUE;
+			for (int i = 0; i < a.getNumberOfShapes(); i++) {
+				size = Math.min(size, a.geometry.getBP(i, a.getShape(i), a.getTransform()));
+			}
+			if (distance < size * size * 0.25f) continue;
+			
+			if (!boundsReady) {
+				for (Body b : bodies) {
+					b.updateBounds();
+				}
+				boundsReady = true;
+			}
+			
+			float toi = 1.0f;
+			for (Body b : bodies) {
+				if (a == b || b.isTrigger() || b.getNumberOfShapes() == 0) continue;
+				if (b.getOneWayLeniency() != 1.0f || !canCollide(a, b)) continue;
+				
+				float dbx = b.getTransform().position.x - store.prevX[b.slot];
+				float dby = b.getTransform().position.y - store.prevY[b.slot];
+				if (!sweptBoundsOverlap(a.minX, a.minY, a.maxX, a.maxY, dax, day,
+						b.minX, b.minY, b.maxX, b.maxY, dbx, dby)) continue;
+				
+				toi = Math.min(toi, sweep(a, dax, day, b, dbx, dby));
+			}
+			
+			if (toi < 1.0f) {
+				// Go a little bit past the contact, so there is a collision to solve
+				toi = Math.min(1.0f, toi + 2.0f * Collision.INACCURACY / (float) Math.sqrt(distance));
+				position.x = store.prevX[a.slot] + dax * toi;
+				position.y = store.prevY[a.slot] + day * toi;
+			}
+		}
+	}
+	
+	/**
+	 * Sweeps all the shapes of a bullet against the shapes of another
+	 * body, using the shape tree of the other body if it has one.
+	 * 
+	 * @return the earliest time of impact, or 1 if there is none.
+	 */
+	private float sweep(Body a, float dax, float day, Body b, float dbx, float dby) {
+		ShapeTree treeB = b.getShapeTree();
+		Transform ta = a.getTransform();
+		Transform tb = b.getTransform();
+		
+		float toi = 1.0f;
+		for (int i = 0; i < a.getNumberOfShapes(); i++) {
+			Shape shapeA = a.getShape(i);
+			float minAX = a.geometry.getMinX(i, shapeA, ta);
+			float minAY = a.geometry.getMinY(i, shapeA, ta);
+			float maxAX = a.geometry.getMaxX(i, shapeA, ta);
+			float maxAY = a.geometry.getMaxY(i, shapeA, ta);
+			
+			// The box the shape swept through, as seen from B
+			float minX = Math.min(minAX, minAX - dax + dbx);
+			float minY = Math.min(minAY, minAY - day + dby);
+			float maxX = Math.max(maxAX, maxAX - dax + dbx);
+			float maxY = Math.max(maxAY, maxAY - day + dby);
+			
+			int numB = b.getNumberOfShapes();
+			if (treeB != null) {
+				if (nearB.length < treeB.size()) nearB = new int[treeB.size()];
+				numB = treeB.query(minX, minY, maxX, maxY, nearB);
+			}
+			
+			for (int j = 0; j < numB; j++) {
+				int indexB = treeB == null ? j : nearB[j];
+				if (treeB == null) {
+					Shape shapeB = b.getShape(indexB);
+					if (maxX < b.geometry.getMinX(indexB, shapeB, tb) || b.geometry.getMaxX(indexB, shapeB, tb) < minX ||
+						maxY < b.geometry.getMinY(indexB, shapeB, tb) || b.geometry.getMaxY(indexB, shapeB, tb) < minY) continue;
+				}
+				toi = Math.min(toi, Collision.sweepTest(a, i, dax, day, b, indexB, dbx, dby));
+			}
+		}
+		return toi;
+	}
+	
+	/**
+	 * Checks if the boxes overlap anywhere along their motions,
+	 * the boxes are where the motions end.
+	 */
+	private static boolean sweptBoundsOverlap(float aMinX, float aMinY, float aMaxX, float aMaxY, float dax, float day,
+			float bMinX, float bMinY, float bMaxX, float bMaxY, float dbx, float dby) {
+		return Math.min(aMinX, aMinX - dax) <= Math.max(bMaxX, bMaxX - dbx) &&
+			   Math.min(bMinX, bMinX - dbx) <= Math.max(aMaxX, aMaxX - dax) &&
+			   Math.min(aMinY, aMinY - day) <= Math.max(bMaxY, bMaxY - dby) &&
+			   Math.min(bMinY, bMinY - dby) <= Math.max(aMaxY, aMaxY - day);
+	}
+	
+	/**
+	 * Wakes and puts bodies to sleep. Bodies that were moved or
+	 * pushed since the last step wake up, along with the rest of
+	 * their island. Then the bodies are grouped into islands using
+	 * the pairs of the previous step, and islands where every body
+	 * has been still for long enough fall asleep together.
+	 */
+	private void updateSleep() {
+		int n = bodies.size();
+		
+		// Wake the islands of the bodies that have been disturbed
+		int numWoken = 0;
+		for (int i = 0; i < n; i++) {
+			Body b = bodies.get(i);
+			if (b.isSleeping() && b.wasMoved()) b.wake();
+			if (b.isSleeping() || b.island == -1) continue;
+			
+			if (numWoken == woken.length) woken = Arrays.copyOf(woken, numWoken * 2);
+			woken[numWoken++] = b.island;
+			b.island = -1;
+		}
+		for (int i = 0; 0 < numWoken && i < n; i++) {
+			Body b = bodies.get(i);
+			if (!b.isSleeping()) continue;
+			for (int k = 0; k < numWoken; k++) {
+				if (woken[k] == b.island) {
+					b.wake();
+					b.island = -1;
+					break;
+				}
+			}
+		}
+		
+		// Count how long each body has been still
+		for (int i = 0; i < n; i++) {
+			Body b = bodies.get(i);
+			if (!canSleep(b) || b.isSleeping() || b.skipped) continue;
+			
+			// Bodies stepped at a lower rate move further each step they take
+			float speed = sleepVelocity * stepLength * b.elapsed;
+			if (b.movedSquared() < speed * speed) {
+				b.stillSteps += b.elapsed;
+			} else {
+				b.stillSteps = 0;
+			}
+		}
+		
+		if (!pairsValid) return;
+		
+		// Group the bodies that were close to each other
+		if (parents.length < n) {
+			parents = new int[n * 2];
+			islandStill = new int[n * 2];
+			islandIds = new int[n * 2];
+		}
+		for (int i = 0; i < n; i++) {
+			parents[i] = i;
+			islandStill[i] = Integer.MAX_VALUE;
+			islandIds[i] = -1;
+		}
+		for (int k = 0; k < pairs.size(); k++) {
+			int i = pairs.getA(k);
+			int j = pairs.getB(k);
+			if (!canSleep(bodies.get(i)) || !canSleep(bodies.get(j))) continue;
+			parents[root(i)] = root(j);
+		}
+		
+		// An island is as still as its least still body, islands
+		// that are already asleep are marked with -1
+		for (int i = 0; i < n; i++) {
+			Body b = bodies.get(i);
+			if (!canSleep(b)) continue;
+			int r = root(i);
+			islandStill[r] = Math.min(islandStill[r], b.stillSteps);
+			if (!b.isSleeping()) islandIds[r] = -2;
+		}
+		
+		for (int i = 0; i < n; i++) {
+			Body b = bodies.get(i);
+			if (!canSleep(b)) continue;
+			int r = root(i);
+			if (islandStill[r] < sleepSteps || islandIds[r] == -1) continue;
+			
+			if (islandIds[r] == -2) islandIds[r] = nextIsland++;
+			b.sleep(islandIds[r]);
+		}
+	}
+	
+	/**
+	 * Finds the root of the island the body is in, and
+	 * shortens the path to it on the way.
+	 */
+	private int root(int i) {
+		while (parents[i] != i) {
+			parents[i] = parents[parents[i]];
+			i = parents[i];
+		}
+		return i;
+	}
+	
+	/**
+	 * Checks if the body takes part in sleeping, triggers are
+	 * usually moved by hand so they never fall asleep.
+	 */
+	private static boolean canSleep(Body b) {
+		return b.isDynamic() && !b.isTrigger();
+	}
+	
+	/**
+	 * Fills the pair buffer with all pairs that should
+	 * be tested, in the order of a nested loop over
+	 * all bodies.
+	 */
+	private void findPairs() {
+		pairs.clear();
+		for (Body b : bodies) {
+			b.updateBounds();
+		}
+		broadPhase.findPairs(bodies, pairs);
+		pairs.sort();
+	}
+	
+	/**
+	 * Checks if two bodies should be tested against
+	 * each other at all. Triggers are never paired up,
+	 * they are handled by {@link #findOverlaps()}.
+	 * 
+	 * @param a the first body.
+	 * @param b the second body.
+	 * @return true if the bodies may collide.
+	 */
+	static boolean canCollide(Body a, Body b) {
+		// Triggers don't collide
+		if (a.isTrigger() || b.isTrigger()) return false;
+		// Check if they share a layer
+		if (!a.sharesLayer(b)) return false;
+		// Make sure one of them can be pushed
+		if (!a.isDynamic() && !b.isDynamic()) return false;
+		// Make sure not both are standing still, sleeping bodies count as static
+		if (isResting(a) && isResting(b)) return false;
+		return true;
+	}
+	
+	/**
+	 * Checks if the world leaves the body where it is. Static bodies,
+	 * sleeping bodies and bodies left out of the step rest.
+	 * 
+	 * @param b the body.
+	 * @return true if the body isn't moving.
+	 */
+	static boolean isResting(Body b) {
+		return b.isSleeping() || b.skipped || (!b.isDynamic() && !b.isKinematic());
+	}
+	
+	/**
+	 * Checks if a body should be tested against a trigger.
+	 * 
+	 * @param trigger the trigger.
+	 * @param b the body.
+	 * @return true if the body may overlap the trigger.
+	 */
+	private static boolean canOverlap(Body trigger, Body b) {
+		if (b == trigger || b.isTrigger() || b.getNumberOfShapes() == 0) return false;
+		if (!trigger.sharesLayer(b)) return false;
+		// Make sure not both are static
+		return trigger.isDynamic() || trigger.isKinematic() || b.isDynamic() || b.isKinematic();
+	}
+	
+	/**
+	 * Finds the bodies that overlap each trigger. The broad phase
+	 * finds the bodies inside the bounds of the trigger, and they
+	 * are only tested for overlap, so no contact is worked out and
+	 * nothing is solved. A static trigger that hasn't moved since the
+	 * last time keeps what it found then for the bodies that are asleep.
+	 * Static triggers can still be moved by hand, like the ones that
+	 * follow the players, so that is only trusted if the bounds and the
+	 * rotation of the trigger are the same.
+	 * <p>
+	 * Both the trigger and the body are given a collision for each
+	 * overlap, with no normal and no depth.
+	 * </p>
+	 * 
+	 * @param refresh false to keep what every trigger overlapped in
+	 * the previous step, without looking again.
+	 */
+	private void findOverlaps(boolean refresh) {
+		for (int i = 0; i < bodies.size(); i++) {
+			Body t = bodies.get(i);
+			if (!t.isTrigger() || t.getNumberOfShapes() == 0) {
+				if (t.overlaps != null) t.overlaps.clear();
+				continue;
+			}
+			if (t.overlaps == null) t.overlaps = new ArrayList<Body>();
+			
+			if (!refresh) {
+				for (int k = 0; k < t.overlaps.size(); k++) {
+					addOverlap(t, t.overlaps.get(k));
+				}
+				continue;
+			}
+			
+			// Swap the lists, so the previous overlaps can be looked up
+			ArrayList<Body> previous = t.overlaps;
+			t.overlaps = previousOverlaps;
+			t.overlaps.clear();
+			previousOverlaps = previous;
+			
+			float rotation = t.getTransform().rotation;
+			boolean still = !t.isDynamic() && !t.isKinematic()
+					&& t.overlapMinX == t.minX && t.overlapMinY == t.minY
+					&& t.overlapMaxX == t.maxX && t.overlapMaxY == t.maxY
+					&& t.overlapRotation == rotation;
+			t.overlapMinX = t.minX;
+			t.overlapMinY = t.minY;
+			t.overlapMaxX = t.maxX;
+			t.overlapMaxY = t.maxY;
+			t.overlapRotation = rotation;
+			
+			int n = findCandidates(t.minX, t.minY, t.maxX, t.maxY);
+			for (int k = 0; k < n; k++) {
+				Body b = bodies.get(candidates[k]);
+				if (!canOverlap(t, b)) continue;
+				
+				boolean overlapping;
+				if (still && b.isSleeping()) {
+					overlapping = previous.contains(b);
+				} else {
+					overlapping = overlaps(t, b);
+				}
+				if (!overlapping) continue;
+				
+				t.overlaps.add(b);
+				addOverlap(t, b);
+			}
+		}
+		previousOverlaps.clear();
+	}
+	
+	/**
+	 * Hands both the trigger and the body a collision for an overlap.
+	 * 
+	 * @param t the trigger.
+	 * @param b the body.
+	 */
+	private void addOverlap(Body t, Body b) {
+		overlap.a = t;
+		overlap.b = b;
+		overlap.normal = overlapNormal;
+		overlap.distance = overlapDistance.set(b.getTransform().position).sub(t.getTransform().position);
+		overlap.collisionDepth = 0.0f;
+		Collision ct = t.addCollision(overlap);
+		Collision cb = b.addCollision(overlap);
+		if (!listeners.isEmpty()) {
+			tracker.touch(t, ct, b, cb);
+		}
+	}
+	
+	/**
+	 * Checks if any shape of the trigger overlaps any shape of the
+	 * body. The boxes around the shapes are compared first, so the
+	 * exact test only runs on shapes that are close.
+	 * 
+	 * @param t the trigger.
+	 * @param b the body.
+	 * @return true if they overlap.
+	 */
+	private boolean overlaps(Body t, Body b) {
+		Transform tt = t.getTransform();
+		Transform tb = b.getTransform();
+		TransformedShapes gt = t.geometry;
+		TransformedShapes gb = b.geometry;
+		ShapeTree tree = b.getShapeTree();
+		
+		for (int i = 0; i < t.getNumberOfShapes(); i++) {
+			Shape st = t.getShape(i);
+			float x = gt.getCenterX(i, st, tt);
+			float y = gt.getCenterY(i, st, tt);
+			
+			int numB = b.getNumberOfShapes();
+			if (tree != null) {
+				if (nearB.length < tree.size()) nearB = new int[tree.size()];
+				numB = tree.query(gt.getMinX(i, st, tt), gt.getMinY(i, st, tt),
+						gt.getMaxX(i, st, tt), gt.getMaxY(i, st, tt), nearB);
+			}
+			
+			for (int j = 0; j < numB; j++) {
+				int index = tree == null ? j : nearB[j];
+				Shape sb = b.getShape(index);
+				float bx = gb.getCenterX(index, sb, tb);
+				float by = gb.getCenterY(index, sb, tb);
+				if (!TransformedShapes.boxesOverlap(gt, i, x, y, gb, index, bx, by)) continue;
+				
+				if (Collision.overlaps(gt, i, x, y, gb, index, bx, by)) return true;
+			}
+		}
+		return false;
+	}
+	
+	/**
+	 * Tests all the shapes of the two bodies against each other
+	 * and solves the collisions that are found. Bodies with a lot
+	 * of shapes use their shape tree, so only the shapes close to
+	 * the other body are tested.
+	 * 
+	 * @param a the first body.
+	 * @param b the second body.
+	 */
+	private void collide(Body a, Body b) {
+		ArrayList<Shape> shapesA = a.getShapes();
+		ArrayList<Shape> shapesB = b.getShapes();
+		ShapeTree treeA = a.getShapeTree();
+		ShapeTree treeB = b.getShapeTree();
+		
+		int numA = shapesA.size();
+		if (treeA != null) {
+			// Only the shapes of A that are close to B
+			b.updateBounds();
+			if (nearA.length < treeA.size()) nearA = new int[treeA.size()];
+			numA = treeA.query(b.minX, b.minY, b.maxX, b.maxY, nearA);
+			// Keep the same order as without the tree
+			Arrays.sort(nearA, 0, numA);
+		}
+		
+		Transform ta = a.getTransform();
+		Transform tb = b.getTransform();
+		for (int i = 0; i < numA; i++) {
+			int indexA = treeA == null ? i : nearA[i];
+			Shape shapeA = shapesA.get(indexA);
+			
+			int numB = shapesB.size();
+			if (treeB != null) {
+				// Only the shapes of B that are close to this shape
+				TransformedShapes ga = a.geometry;
+				if (nearB.length < treeB.size()) nearB = new int[treeB.size()];
+				numB = treeB.query(ga.getMinX(indexA, shapeA, ta), ga.getMinY(indexA, shapeA, ta),
+						ga.getMaxX(indexA, shapeA, ta), ga.getMaxY(indexA, shapeA, ta), nearB);
+				Arrays.sort(nearB, 0, numB);
+			}
+			
+			for (int j = 0; j < numB; j++) {
+				int indexB = treeB == null ? j : nearB[j];
+				collide(a, indexA, b, indexB);
+			}
+		}
+	}
+	
+	/**
+	 * Tests one shape from each body against each other and solves
+	 * the collision if there is one. In the batched modes the pair
+	 * is only added to the batch.
+	 * 
+	 * @param a the first body.
+	 * @param shapeA the index of the shape in the first body.
+	 * @param b the second body.
+	 * @param shapeB the index of the shape in the second body.
+	 */
+	private void collide(Body a, int shapeA, Body b, int shapeB) {
+		Transform ta = a.getTransform();
+		Transform tb = b.getTransform();
+		Shape sa = a.getShape(shapeA);
+		Shape sb = b.getShape(shapeB);
+		
+		TransformedShapes ga = a.geometry;
+		TransformedShapes gb = b.geometry;
+		if (!TransformedShapes.boxesOverlap(
+				ga, shapeA, ga.getCenterX(shapeA, sa, ta), ga.getCenterY(shapeA, sa, ta),
+				gb, shapeB, gb.getCenterX(shapeB, sb, tb), gb.getCenterY(shapeB, sb, tb))) return;
+		boolean sat = false;
+		if (stats.enabled) {
+			stats.shapeTests++;
+			sat = Collision.usesSAT(ga, shapeA, gb, shapeB, gjkPoints);
+			if (sat) stats.satTests++;
+		}
+		
+		if (narrowPhase != NarrowPhase.SEQUENTIAL) {
+			// The slots are found once the batch is complete
+			batch.add(a, shapeA, b, shapeB);
+			return;
+		}
+		
+		int slot = contacts.find(a, shapeA, b, shapeB);
+		Collision c = Collision.test(a, shapeA, b, shapeB, contacts, slot, gjkPoints, gjkScratch);
+		if (sat && c != null) stats.satHits++;
+		resolve(a, b, c, slot);
+	}
+	
+	/**
+	 * Registers and solves a collision found by the narrow phase.
+	 * 
+	 * @param a the first body.
+	 * @param b the second body.
+	 * @param c the collision, or null if the shapes weren't touching.
+	 * @param slot the slot of the pair in the contact cache.
+	 */
+	private void resolve(Body a, Body b, Collision c, int slot) {
+		if (c == null) return;
+		
+		// Skip the collision if the normal is the wrong way
+		if (!b.oneWayCheck(c.collisionDepth, a.getVelocity(), c.normal) || 
+			!a.oneWayCheck(c.collisionDepth, b.getVelocity(), c.normal.clone().negate())) 
+			return;
+		
+		// Now we sort them
+		if (a.isDynamic()) {
+			c.a = b;
+			c.b = a;
+		} else {
+			c.a = a;
+			c.b = b;
+		}
 
-							// Add their collisions to the bodies
-							a.addCollision(c);
-							b.addCollision(c);
-							
-							// If one of them is a trigger we are done
-							if (a.isTrigger() || b.isTrigger()) return;
-						
-							c.solve(stepLength);
-						}
-					}
+		// Add their collisions to the bodies
+		Collision ca = a.addCollision(c);
+		Collision cb = b.addCollision(c);
+		if (!listeners.isEmpty()) {
+			tracker.touch(a, ca, b, cb);
+		}
+	
+		long start = stats.enabled ? System.nanoTime() : 0L;
+		contacts.handOver(slot, c);
+		// Kinematic bodies are always sorted first
+		c.riding = c.a.isKinematic() && isRiding(c);
+		c.solve(stepLength);
+		contacts.store(slot, c);
+		
+		if (c.riding) {
+			Vector2f velocity = c.a.getVelocity();
+			c.b.carry(velocity.x, velocity.y);
+			if (velocity.x != 0.0f || velocity.y != 0.0f) c.b.wake();
+		}
+		if (stats.enabled) {
+			stats.solves++;
+			stats.solveNanos += System.nanoTime() - start;
+		}
+	}
+	
+	/**
+	 * Checks if the second body of the collision is standing on the
+	 * first, so it should be carried along instead of pushed.
+	 * Has to be called before the collision is solved.
+	 * 
+	 * @param c the collision.
+	 * @return true if the second body is on top of the first.
+	 */
+	private boolean isRiding(Collision c) {
+		float g = gravity.length();
+		if (g == 0.0f) return false;
+		// The normal points from the first body to the second, up is against gravity
+		return rideSlope * g < -c.dotSolveNormal(gravity.x, gravity.y);
+	}
+	
+	/**
+	 * Finds the solid bodies on the layers that overlap the box. The
+	 * bodies are written to the array in the order they were added to
+	 * the world, if there are more than fit the rest are left out.
+	 * Triggers are never found.
+	 * 
+	 * @param minX the left edge of the box.
+	 * @param minY the bottom edge of the box.
+	 * @param maxX the right edge of the box.
+	 * @param maxY the top edge of the box.
+	 * @param layer the layers to look for bodies on.
+	 * @param out the array to write the bodies to.
+	 * @return the number of bodies found.
+	 */
+	public int queryAABB(float minX, float minY, float maxX, float maxY, short layer, Body[] out) {
+		queryBoxTransform.position.set((minX + maxX) * 0.5f, (minY + maxY) * 0.5f);
+		queryBoxTransform.scale.set(maxX - minX, maxY - minY);
+		return queryShape(queryBox, queryBoxTransform, layer, out);
+	}
+	
+	/**
+	 * Finds the solid bodies on the layers that overlap the shape. The
+	 * bodies are written to the array in the order they were added to
+	 * the world, if there are more than fit the rest are left out.
+	 * Triggers are never found.
+	 * 
+	 * @param shape the shape to look inside.
+	 * @param transform where the shape is.
+	 * @param layer the layers to look for bodies on.
+	 * @param out the array to write the bodies to.
+	 * @return the number of bodies found.
+	 */
+	public int queryShape(Shape shape, Transform transform, short layer, Body[] out) {
+		queryShapes.clear();
+		queryShapes.add(shape);
+		queryGeometry.invalidate();
+		queryGeometry.update(queryShapes, transform, false, 0);
+		
+		float x = shape.getCenterX(transform);
+		float y = shape.getCenterY(transform);
+		float minX = queryGeometry.getMinX(0, shape, transform);
+		float minY = queryGeometry.getMinY(0, shape, transform);
+		float maxX = queryGeometry.getMaxX(0, shape, transform);
+		float maxY = queryGeometry.getMaxY(0, shape, transform);
+		int n = findCandidates(minX, minY, maxX, maxY);
+		
+		int found = 0;
+		for (int k = 0; k < n && found < out.length; k++) {
+			Body b = bodies.get(candidates[k]);
+			if (b.isTrigger() || (b.getLayer() & layer) == 0) continue;
+			
+			b.updateGeometry();
+			Transform tb = b.getTransform();
+			ShapeTree tree = b.getShapeTree();
+			int numB = b.getNumberOfShapes();
+			if (tree != null) {
+				if (nearB.length < tree.size()) nearB = new int[tree.size()];
+				numB = tree.query(minX, minY, maxX, maxY, nearB);
+			}
+			
+			for (int j = 0; j < numB; j++) {
+				int index = tree == null ? j : nearB[j];
+				Shape sb = b.getShape(index);
+				if (Collision.overlaps(queryGeometry, 0, x, y, b.geometry, index,
+						b.geometry.getCenterX(index, sb, tb), b.geometry.getCenterY(index, sb, tb))) {
+					out[found++] = b;
+					break;
+				}
+			}
+		}
+		return found;
+	}
+	
+	/**
+	 * Casts a ray between two points and finds the first solid
+	 * body on the layers that it hits. Triggers are never hit.
+	 * A ray that starts inside a body hits it right away.
+	 * 
+	 * @param from the start of the ray.
+	 * @param to the end of the ray.
+	 * @param layer the layers to look for bodies on.
+	 * @param hit where the closest hit is written, only changed if something was hit.
+	 * @return true if something was hit.
+	 * @throws IllegalArgumentException if the ray has no length.
+	 */
+	public boolean raycast(Vector2f from, Vector2f to, short layer, RaycastHit hit) {
+		float dx = to.x - from.x;
+		float dy = to.y - from.y;
+		if (dx == 0.0f && dy == 0.0f) {
+			throw new IllegalArgumentException("Zero length ray supplied.");
+		}
+		
+		float minX = Math.min(from.x, to.x);
+		float minY = Math.min(from.y, to.y);
+		float maxX = Math.max(from.x, to.x);
+		float maxY = Math.max(from.y, to.y);
+		int n = findCandidates(minX, minY, maxX, maxY);
+		
+		Body closest = null;
+		int closestShape = -1;
+		float fraction = Float.MAX_VALUE;
+		float normalX = 0.0f;
+		float normalY = 0.0f;
+		for (int k = 0; k < n; k++) {
+			Body b = bodies.get(candidates[k]);
+			if (b.isTrigger() || (b.getLayer() & layer) == 0) continue;
+			
+			b.updateGeometry();
+			Transform tb = b.getTransform();
+			ShapeTree tree = b.getShapeTree();
+			int numB = b.getNumberOfShapes();
+			if (tree != null) {
+				if (nearB.length < tree.size()) nearB = new int[tree.size()];
+				numB = tree.query(minX, minY, maxX, maxY, nearB);
+				// Ties go to the lowest index, like without the tree
+				Arrays.sort(nearB, 0, numB);
+			}
+			
+			for (int j = 0; j < numB; j++) {
+				int index = tree == null ? j : nearB[j];
+				Shape sb = b.getShape(index);
+				float t = Collision.raycast(b.geometry, index, 
+						b.geometry.getCenterX(index, sb, tb), b.geometry.getCenterY(index, sb, tb),
+						from.x, from.y, dx, dy, rayNormal);
+				if (t < fraction) {
+					fraction = t;
+					closest = b;
+					closestShape = index;
+					normalX = rayNormal.x;
+					normalY = rayNormal.y;
 				}
 			}
 		}
+		
+		if (closest == null) return false;
+		hit.body = closest;
+		hit.shape = closestShape;
+		hit.fraction = fraction;
+		hit.point.set(from.x + dx * fraction, from.y + dy * fraction);
+		hit.normal.set(normalX, normalY);
+		return true;
+	}
+	
+	/**
+	 * Fills the candidate buffer with the bodies whose bounds overlap
+	 * the box, sorted in the order they were added. The broad phase is
+	 * used when it was built for the current body list, otherwise every
+	 * body is checked.
+	 * 
+	 * @return the number of candidates.
+	 */
+	private int findCandidates(float minX, float minY, float maxX, float maxY) {
+		if (candidates.length < bodies.size()) candidates = new int[bodies.size() * 2];
+		
+		int found = 0;
+		if (pairsValid) {
+			found = broadPhase.query(bodies, minX, minY, maxX, maxY, candidates);
+		} else {
+			for (int i = 0; i < bodies.size(); i++) {
+				Body b = bodies.get(i);
+				b.updateBounds();
+				if (b.getNumberOfShapes() == 0) continue;
+				if (maxX < b.minX || b.maxX < minX || maxY < b.minY || b.maxY < minY) continue;
+				candidates[found++] = i;
+			}
+		}
+		Arrays.sort(candidates, 0, found);
+		return found;
 	}
 	
 	/**
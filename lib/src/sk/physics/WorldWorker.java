@@ -0,0 +1,124 @@
+package sk.physics;
+
+/**
+ * Steps a world on a thread of its own, so two worlds can be
+ * simulated at the same time.
+ * <p>
+ * A step is started with {@link #begin(World, double)} and
+ * {@link #await()} blocks until it is done. Between the two calls
+ * the world, and every body in it, belongs to the worker and must
+ * not be touched. A body that is in two worlds may only be
+ * stepped by one of them while the worker is running. The foci of
+ * the world are copied when it is handed over, so they may be moved
+ * by the other world in the meantime.
+ * </p>
+ * <p>
+ * The contact listeners of the world are called on the worker
+ * thread, see {@link ContactListener#onContact(ContactEvent)}.
+ * </p>
+ *
+ * @author Ed
+ *
+ */
+public class WorldWorker {
+
+	private final Thread thread;
+
+	// The world that should be stepped, null when the worker is idle
+	private World world = null;
+	private double delta = 0.0;
+
+	// Anything that went wrong during the latest step
+	private Throwable error = null;
+
+	/**
+	 * Creates a new worker and starts its thread. The thread is a
+	 * daemon, so it doesn't keep the program alive.
+	 */
+	public WorldWorker() {
+		thread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				work();
+			}
+		}, "Physics Worker");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Starts stepping the world on the worker thread.
+	 *
+	 * @param world the world to step.
+	 * @param delta the time passed since the previous frame.
+	 * @throws IllegalStateException if the previous step hasn't been awaited.
+	 */
+	public synchronized void begin(World world, double delta) {
+		if (this.world != null) {
+			throw new IllegalStateException("The previous step has not been awaited.");
+		}
+		// Still on the calling thread, so nothing is moving the foci yet
+		world.copyFocus();
+		this.world = world;
+		this.delta = delta;
+		notifyAll();
+	}
+
+	/**
+	 * Waits for the step started with {@link #begin(World, double)}
+	 * to finish. Returns right away if nothing is being stepped.
+	 *
+	 * @throws RuntimeException if the step failed, with the failure as the cause.
+	 */
+	public synchronized void await() {
+		boolean interrupted = false;
+		while (world != null) {
+			try {
+				wait();
+			} catch (InterruptedException e) {
+				interrupted = true;
+			}
+		}
+		if (interrupted) Thread.currentThread().interrupt();
+
+		if (error != null) {
+			Throwable e = error;
+			error = null;
+			throw new RuntimeException("The world failed to step.", e);
+		}
+	}
+
+	/**
+	 * Waits for worlds and steps them, forever.
+	 */
+	private void work() {
+		while (true) {
+			World w;
+			double d;
+			synchronized (this) {
+				while (world == null) {
+					try {
+						wait();
+					} catch (InterruptedException e) {
+						// Nothing to stop for
+					}
+				}
+				w = world;
+				d = delta;
+			}
+
+			Throwable failure = null;
+			try {
+				w.update(d);
+			} catch (Throwable e) {
+				failure = e;
+			}
+
+			synchronized (this) {
+				error = failure;
+				world = null;
+				notifyAll();
+			}
+		}
+	}
+}
@@ -31,8 +31,12 @@ import sk.gfx.Texture;
 import sk.gfx.Transform;
 import sk.gfx.Vertex2D;
 import sk.physics.Body;
+import sk.physics.Collision;
 import sk.physics.Shape;
+import sk.physics.ShapeOptimizer;
+import sk.physics.SpatialHash;
 import sk.physics.World;
+import sk.physics.WorldWorker;
 import sk.util.vector.Vector2f;
 import sk.util.vector.Vector3f;
 
@@ -47,6 +51,17 @@ public class Level extends Node {
 	public World[] worlds;
 	public Body[] terrain;
 	
+	// Keeps the other timeline moving while the players are away from it
+	public boolean simulateBothTimelines = true;
+	private static final WorldWorker worker = new WorldWorker();
+	
+	// How far outside the screen bodies are still stepped at the full rate
+	private static final float LOD_MARGIN = 2.0f;
+	
+	// The cells of the broad phase, a bit larger than the doors, the largest
+	// things in a level besides the terrain, which is kept out of the grid
+	private static final float CELL_SIZE = 0.25f;
+	
 	public float CameraScaleSpeed = 1.75f;
 	public float CameraMoveSpeed = 1.5f;
 
@@ -100,6 +115,18 @@ public class Level extends Node {
 			worlds[i] = new World();
 			
 			worlds[i].gravity = new Vector2f(0, -2.8f);
+			worlds[i].setBroadPhase(new SpatialHash(CELL_SIZE));
+			// Let rocks and keys that are lying still rest
+			worlds[i].sleepSteps = 30;
+			// Start from last step's impulses, so piles of rocks stay up
+			worlds[i].warmStarting = 1.0f;
+			// A quarter of a frame each, so both timelines together take
+			// at most half a frame, even when they can't run side by side
+			worlds[i].budget = 0.004f;
+			// Things far from the players and the camera are stepped less often
+			worlds[i].addFocus(player1.get(Transform.class));
+			worlds[i].addFocus(player2.get(Transform.class));
+			worlds[i].addFocus(Camera.DEFAULT);
 		}
 		
 		chunks = new Chunk[2][data[0].chunksY][data[0].chunksX];
@@ -120,11 +147,8 @@ public class Level extends Node {
 		
 		for(int i = 0; i < levelData.length; i++) {
 			
-			ArrayList<Shape> shapes = new ArrayList<>();
-			
-			for(int j = 0; j < data[i].terrain.size(); j++) {
-				shapes.add(new Shape(data[i].terrain.get(j)));
-			}
+			// The editor splits the terrain into a lot of small pieces, put them back together
+			ArrayList<Shape> shapes = ShapeOptimizer.optimize(data[i].terrain, Collision.INACCURACY);
 			
 			Transform t = new Transform();
 			t.position.x += .5f;
@@ -149,10 +173,15 @@ public class Level extends Node {
 		
 		spawnPlayers();
 		
+		// The players are only simulated in the timeline they are in
+		for (Body b : getPlayerBodies()) {
+			worlds[1 - currentSheet].removeBody(b);
+		}
+		
 		// We should let the physics simulate first, to make sure we place the players in a good positon. so the camera doesn't shake.
 		
-		worlds[0].update(0.5f);
-		worlds[1].update(0.5f);
+		worlds[0].step(30);
+		worlds[1].step(30);
 		
 		initCamera();
 	}
@@ -324,7 +353,20 @@ public class Level extends Node {
 		}
 	}
 	
+	private Body[] getPlayerBodies() {
+		return new Body[] {
+			player1.body, player1.pickupTrigger,
+			player2.body, player2.pickupTrigger
+		};
+	}
+	
 	public void switchTime() {
+		// Both worlds are idle here, so the players can be moved over
+		for (Body b : getPlayerBodies()) {
+			worlds[currentSheet].removeBody(b);
+			worlds[1 - currentSheet].addBody(b);
+		}
+		
 		currentSheet++;
 		currentSheet %= 2;
 		
@@ -428,6 +470,12 @@ public class Level extends Node {
 		}
 		Camera.DEFAULT.scale.x = scale;
 		Camera.DEFAULT.scale.y = scale;
+		
+		// Everything on screen, and a bit around it, is stepped at the full rate
+		float lodRadius = scale * (float) Math.hypot(Window.getAspectRatio(), 1.0) + LOD_MARGIN;
+		for (World w : worlds) {
+			w.lodRadius = lodRadius;
+		}
 
 		// Make sure the target won't show chunks that are outside.
 		if (targetPosition.y + scale > 0.5f) {
@@ -471,7 +519,15 @@ public class Level extends Node {
 	
 	@Override
 	public void update(double delta) {		
-		worlds[currentSheet].update(delta);
+		if (simulateBothTimelines) {
+			// The other timeline is stepped on the worker while
+			// this one is stepped here, gameplay waits for both
+			worker.begin(worlds[1 - currentSheet], delta);
+			worlds[currentSheet].update(delta);
+			worker.await();
+		} else {
+			worlds[currentSheet].update(delta);
+		}
 		
 		adjustCamera();
 		
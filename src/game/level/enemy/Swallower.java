@@ -10,6 +10,7 @@ import sk.gfx.SpriteSheet;
 import sk.gfx.Transform;
 import sk.physics.Body;
 import sk.physics.Shape;
+import sk.physics.Tags;
 import sk.util.vector.Vector2f;
 
 public class Swallower extends Component {
@@ -18,6 +19,9 @@ public class Swallower extends Component {
 	private static final float SIZE = .12f;
 	private static final float SIZE_BIG = .14f;
 	
+	private static final int P1 = Tags.bit("p1");
+	private static final int P2 = Tags.bit("p2");
+	
 	private Player swallowed = null;
 	
 	private Enemy e;
@@ -87,20 +91,20 @@ public class Swallower extends Component {
 				flip();
 			}
 			
-			if(e.get(Body.class).isCollidingWithTags("p1")) {
+			if(e.get(Body.class).isCollidingWithTags(P1)) {
 				swallow(e.l.player1);
-			} else if(e.get(Body.class).isCollidingWithTags("p2")) {
+			} else if(e.get(Body.class).isCollidingWithTags(P2)) {
 				swallow(e.l.player2);
 			}
 			
 			return;
 		} else if(swallowed == e.l.player1) {
-			if(e.get(Body.class).isCollidingWithTags("p2")) {
+			if(e.get(Body.class).isCollidingWithTags(P2)) {
 				pop();
 				push(e.l.player2, e.l.player1);
 			}
 		} else if(swallowed == e.l.player2) {
-			if(e.get(Body.class).isCollidingWithTags("p1")) {
+			if(e.get(Body.class).isCollidingWithTags(P1)) {
 				pop();
 				push(e.l.player1, e.l.player2);
 			}
@@ -11,11 +11,14 @@ import sk.gfx.Vertex2D;
 import sk.physics.Body;
 import sk.physics.Collision;
 import sk.physics.Shape;
+import sk.physics.Tags;
 import sk.physics.TriggerBody;
 import sk.util.vector.Vector2f;
 
 public class Player extends Entity {
 	
+	private static final int DEATH = Tags.bit("death");
+	
 	static float TIME_STEP = 1 / 60.0f;
 	float timer = 0;
 	
@@ -47,16 +50,17 @@ public class Player extends Entity {
 		transform = new Transform();
 		transform.scale.x = width * SCALE; 
 		transform.scale.y = height * SCALE;
-		body = new Body(1, 0, 0, new Shape(new Vector2f[] {
-				new Vector2f(-0.5f,  0.5f),
-				new Vector2f( 0.5f,  0.5f),
-				new Vector2f( 0.5f, -0.35f),
-				new Vector2f( 0.2f, -0.5f),
-				new Vector2f(-0.2f, -0.5f),
-				new Vector2f(-0.5f, -0.35f)
-				})).setTag(isBoy ? "p1" : "p2");
+		// The radius is scaled by the width, so the ends are moved in
+		// until the capsule is as tall as the player
+		float ends = 0.5f - 0.5f * width / height;
+		body = new Body(1, 0, 0, new Shape(
+				new Vector2f(0.0f,  ends),
+				new Vector2f(0.0f, -ends),
+				0.5f)).setTag(isBoy ? "p1" : "p2");
 		
 		body.setOnlyOverlap(true);
+		// The players can throw each other
+		body.setBullet(true);
 		
 		pickupTrigger = new TriggerBody("reach", Shape.GEN_QUAD(0.75f));
 		pickupTrigger.setTrigger(true);
@@ -123,7 +127,7 @@ public class Player extends Entity {
 			}
 		}
 		
-		if (body.isCollidingWithTags("death")) {
+		if (body.isCollidingWithTags(DEATH)) {
 			kill();
 			return;
 		}
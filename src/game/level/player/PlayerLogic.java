@@ -2,6 +2,7 @@ package game.level.player;
 
 import sk.physics.Body;
 import sk.physics.Collision;
+import sk.physics.Tags;
 import sk.util.io.InputManager;
 import sk.util.vector.Vector2f;
 import game.level.Level;
@@ -22,6 +23,9 @@ public class PlayerLogic extends Launchable {
 	
 	private static final Vector2f UP = new Vector2f(0, 1);
 	
+	private static final int ROCK = Tags.bit("rock");
+	private static final int ICE = Tags.bit("ice");
+	
 	private Body body;
 	
 	private float bufferMaxTime = 0.1f;
@@ -56,8 +60,6 @@ public class PlayerLogic extends Launchable {
 	private boolean thrown = false;
 	private float throwSpeed = 0.5f;
 	
-	private Vector2f platformVelocity = new Vector2f();
-	
 	private PlayerStates state = PlayerStates.NORMAL;
 
 	private float hitStrength = 0.6f;
@@ -219,10 +221,6 @@ public class PlayerLogic extends Launchable {
 		
 			float friction = player.grounded ? (onIce ? iceFriction : groundFriction) : airFriction;
 			Vector2f bodyVelocity = body.getVelocity(); 
-			// Make sure we don't mess with the movement of the platform
-			bodyVelocity.sub(platformVelocity);
-			platformVelocity.x = 0;
-			platformVelocity.y = 0;
 			
 			// Add in the velocity we normally have
 			v.add(new Vector2f(bodyVelocity.x * friction, 
@@ -259,7 +257,7 @@ public class PlayerLogic extends Launchable {
 				if (player.grounded) {
 					for (Collision c : body.getCollisions()) {
 						// If we get hit by a rock
-						if (c.other.getTag().equals("rock") && c.other.getVelocity().lengthSquared() >= 0.1f) {
+						if (c.other.hasTags(ROCK) && c.other.getVelocity().lengthSquared() >= 0.1f) {
 							state = PlayerStates.HIT;
 							body.setTrigger(true);
 							
@@ -275,19 +273,14 @@ public class PlayerLogic extends Launchable {
 							body.setVelocity(v.scale(hitStrength));
 							return;
 						} else if (c.normal.dot(UP) > minGroundAngle) {
-							// @Moving-Platforms
-							if (c.other.getTag().equals("moving-platform")) {
-								platformVelocity.add(c.other.getVelocity());
-								transform.position.sub(c.normal.clone().scale(c.collisionDepth * c.other.getVelocity().dot(c.normal)));
-							} else if (!c.other.isTrigger()) {
+							// Moving platforms carry us along by themselves
+							if (!c.other.isTrigger() && !c.other.isKinematic()) {
 								Vector2f n = c.normal.clone();
 								v.add(n.scale(-0.9f * n.dot(v)));
 							}
-							
 						}
 					}
 					v.y = 0;
-					v.add(platformVelocity);
 				} else {
 					for (Collision c : body.getCollisions()) {
 						if (!c.other.isTrigger()) {
@@ -311,7 +304,7 @@ public class PlayerLogic extends Launchable {
 			for (Collision c : body.getCollisions()) {
 				// Weed out the ones we don't want
 				if (c.other.isTrigger()) continue;
-				if (c.other.getTag().equals("rock")) continue;
+				if (c.other.hasTags(ROCK)) continue;
 				
 				body.addVelocity(c.normal.clone().scale(-0.5f * body.getNextVelocity().dot(c.normal)));
 				transform.position.add(c.normal.clone().scale(c.collisionDepth));
@@ -355,12 +348,12 @@ public class PlayerLogic extends Launchable {
 	
 	public void groundCheck() {
 		// Ground check
-		onIce = body.isCollidingWithTags("ice");
+		onIce = body.isCollidingWithTags(ICE);
 
 		player.grounded = false;
 		for (Collision c : body.getCollisions()) {
 			if (c.other.isTrigger()) continue;
-			if (c.other.getTag().equals("moving-platform")) c.normal.negate();
+			if (c.other.isKinematic()) c.normal.negate();
 			player.grounded = c.normal.dot(UP) > minGroundAngle;
 			if (player.grounded) {
 				thrown = false;
@@ -9,6 +9,7 @@ import sk.gfx.Texture;
 import sk.gfx.Transform;
 import sk.physics.Body;
 import sk.physics.Shape;
+import sk.physics.Tags;
 
 public class Battery extends Entity {
 	Body body;
@@ -21,6 +22,7 @@ public class Battery extends Entity {
 	private static final float ENERGY = 0.5f;
 	private static final float SCALE = 0.025f;
 	private static final int SCORE = 100; 
+	private static final int PLAYERS = Tags.mask("p1", "p2");
 	
 	boolean taken = false;
 	
@@ -54,7 +56,7 @@ public class Battery extends Entity {
 			return;
 		}
 		
-		if (body.isCollidingWithTags("p1", "p2")) {
+		if (body.isCollidingWithTags(PLAYERS)) {
 			Hud.changeEnergy(ENERGY);
 			Hud.addScore(SCORE);
 			taken = true;
@@ -12,9 +12,13 @@ import sk.gfx.Transform;
 import sk.physics.Body;
 import sk.physics.Collision;
 import sk.physics.Shape;
+import sk.physics.Tags;
 
 public class Exit extends Entity {
 	
+	private static final int P1 = Tags.bit("p1");
+	private static final int P2 = Tags.bit("p2");
+	
 	Transform transform;
 	Body body;
 	Renderer renderer;
@@ -55,12 +59,12 @@ public class Exit extends Entity {
 		boolean p1 = false;
 		boolean p2 = false;
 		for (Collision c : body.getCollisions()) {
-			if (c.other.getTag().equals("p1")) {
+			if (c.other.hasTags(P1)) {
 				if (((Player) c.other.getParent()).isGrounded()) {
 					p1 = true;
 				}
 			}
-			if (c.other.getTag().equals("p2")) {
+			if (c.other.hasTags(P2)) {
 				if (((Player) c.other.getParent()).isGrounded()) {
 					p2 = true;
 				}
@@ -106,6 +106,8 @@ public class Key extends Entity {
 		// Layer so it doesn't collide with the players
 		body.setLayer((short) (0b100));
 		body.setTag("key");
+		// Keys are thrown, fast enough to pass through thin walls
+		body.setBullet(true);
 		level.worlds[layer].addBody(body);
 		
 		trigger = new TriggerBody("key", Shape.GEN_QUAD(1f));
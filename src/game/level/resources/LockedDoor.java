@@ -10,9 +10,12 @@ import sk.gfx.Transform;
 import sk.physics.Body;
 import sk.physics.Collision;
 import sk.physics.Shape;
+import sk.physics.Tags;
 
 public class LockedDoor extends Entity{
 	
+	private static final int KEY = Tags.bit("key");
+	
 	Level level;
 	int layer;
 
@@ -55,7 +58,7 @@ public class LockedDoor extends Entity{
 		if (!locked) return;
 
 		for (Collision c : body.getCollisions()) {
-			if (c.other.getTag().equals("key")) {
+			if (c.other.hasTags(KEY)) {
 				locked = false;
 				body.setTrigger(true);
 				((Key) c.other.getParent()).useKey();
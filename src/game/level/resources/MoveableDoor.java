@@ -59,8 +59,8 @@ public class MoveableDoor extends Entity {
 		renderer.setTexture(new Texture("res/texture/temp.png"));
 		
 		body = new Body(Shape.QUAD);
-		body.setDynamic(false);
-		body.setTag("moving-platform");
+		// Moved by Moveable, carries whatever stands on it
+		body.setKinematic(true);
 		level.worlds[layer].addBody(body);
 		
 		add(transform);
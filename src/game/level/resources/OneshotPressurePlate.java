@@ -2,7 +2,6 @@ package game.level.resources;
 
 import game.level.Level;
 import sk.gfx.Texture;
-import sk.physics.Collision;
 
 public class OneshotPressurePlate extends PressurePlate {
 	
@@ -14,13 +13,9 @@ public class OneshotPressurePlate extends PressurePlate {
 	@Override
 	public void update(double delta) {
 		if (down) return;
-		for (Collision c : body.getCollisions()) {
-			if (c.other.isDynamic()) {
-				if (!down) {
-					press();
-					down = true;
-				}
-			}
+		if (0 < pressing) {
+			press();
+			down = true;
 		}
 	}
 }
@@ -10,11 +10,13 @@ import sk.gfx.Renderer;
 import sk.gfx.Texture;
 import sk.gfx.Transform;
 import sk.physics.Body;
-import sk.physics.Collision;
+import sk.physics.ContactEvent;
+import sk.physics.ContactListener;
 import sk.physics.Shape;
+import sk.physics.Tags;
 import sk.physics.TriggerBody;
 
-public class PressurePlate extends Entity{
+public class PressurePlate extends Entity implements ContactListener {
 
 	Transform transform;
 	Body body;
@@ -25,6 +27,11 @@ public class PressurePlate extends Entity{
 
 	boolean down = false;
 	
+	// The number of bodies on the plate. Only the contact listener changes
+	// it, which may run on the physics worker, and update reads it after
+	// the worker is done, so the plate never acts on the worker thread
+	int pressing = 0;
+	
 	ArrayList<Connectable> connections = new ArrayList<Connectable>();
 
 	float size = 5;
@@ -45,6 +52,7 @@ public class PressurePlate extends Entity{
 
 		body = new TriggerBody("switch", Shape.QUAD);
 		level.worlds[layer].addBody(body);
+		level.worlds[layer].addContactListener(Tags.mask("switch"), this);
 		
 		add(transform);
 		add(body);
@@ -83,22 +91,27 @@ public class PressurePlate extends Entity{
 		}
 	}
 	
+	@Override
+	public void onContact(ContactEvent event) {
+		if (!event.involves(body)) return;
+		// Only things that can fall onto the plate press it, not doors moving past
+		if (!event.getOther(body).isDynamic()) return;
+		
+		if (event.type == ContactEvent.Type.BEGIN) {
+			pressing++;
+		} else if (event.type == ContactEvent.Type.END) {
+			pressing--;
+		}
+	}
+	
 	@Override
 	public void update(double delta) {
 		super.update(delta);
 		
-		boolean active = false;
-		for (Collision c : body.getCollisions()) {
-			if (c.other.isDynamic()) {
-				active = true;
-				if (!down) {
-					press();
-					down = true;
-				}
-				break;
-			}
-		}
-		if (!active && down) {
+		if (0 < pressing && !down) {
+			press();
+			down = true;
+		} else if (pressing == 0 && down) {
 			release();
 			down = false;
 		}
@@ -115,6 +115,8 @@ public class Rock extends Entity {
 		body = new Body(5, 7, 0, Shape.QUAD);
 		body.setOneWayDirection(new Vector2f(0, 1));
 		body.setTag("rock");
+		// Rocks are thrown, fast enough to pass through thin walls
+		body.setBullet(true);
 		level.worlds[layer].addBody(body);
 		
 		renderer = new Renderer(Mesh.QUAD);